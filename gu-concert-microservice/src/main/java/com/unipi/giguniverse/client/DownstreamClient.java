@@ -0,0 +1,35 @@
+package com.unipi.giguniverse.client;
+
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ One WebClient per downstream service, built once on the pooled connector.
+ */
+public abstract class DownstreamClient {
+
+    private final WebClient webClient;
+
+    protected DownstreamClient(WebClient.Builder webClientBuilder, ClientHttpConnector downstreamConnector){
+        //clone() keeps the load balancer filter of the shared @LoadBalanced builder
+        this.webClient = webClientBuilder.clone()
+                .clientConnector(downstreamConnector)
+                .build();
+    }
+
+    public WebClient.RequestHeadersUriSpec<?> get(){
+        return webClient.get();
+    }
+
+    public WebClient.RequestBodyUriSpec post(){
+        return webClient.post();
+    }
+
+    public WebClient.RequestBodyUriSpec put(){
+        return webClient.put();
+    }
+
+    public WebClient.RequestHeadersUriSpec<?> delete(){
+        return webClient.delete();
+    }
+}
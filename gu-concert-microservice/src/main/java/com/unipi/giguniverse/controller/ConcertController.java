@@ -1,17 +1,26 @@
 package com.unipi.giguniverse.controller;
 
 import com.unipi.giguniverse.dto.ConcertDto;
+import com.unipi.giguniverse.dto.NotificationJobDto;
+import com.unipi.giguniverse.model.ImageBlob;
+import com.unipi.giguniverse.model.ImageVariant;
 import com.unipi.giguniverse.model.Venue;
+import com.unipi.giguniverse.security.JwtVerificationFilter;
 import com.unipi.giguniverse.service.ConcertService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @Slf4j
@@ -30,10 +39,12 @@ public class ConcertController {
     }
 
     @GetMapping
-    public ResponseEntity<List<ConcertDto>> getAllConcerts(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.getAllConcerts());
+    public ResponseEntity<List<ConcertDto>> getAllConcerts(@RequestParam(required = false) Integer after,
+                                                           @RequestParam(required = false) Integer limit){
+        //Always a page, DEFAULT_PAGE_SIZE rows when no limit is given, a full page links to the next one
+        List<ConcertDto> concerts = concertService.getAllConcerts(after, limit);
+        return NextPageLink.page(NextPageLink.currentRequest(), concerts, ConcertService.pageSize(limit),
+                ConcertDto::getConcertId);
     }
 
     // Monolithic Implementation
@@ -45,8 +56,11 @@ public class ConcertController {
 //    }
 
     // Microservices Implementation
-    @GetMapping("/owner/{userId}")
-    public ResponseEntity<List<ConcertDto>> getAllConcertsByLoggedInOwner(@PathVariable Integer userId){
+    //Caller from the verified JWT, see JwtVerificationFilter
+    @GetMapping("/owner")
+    public ResponseEntity<List<ConcertDto>> getConcertsOfCaller(
+            @RequestAttribute(name = JwtVerificationFilter.USER_ID, required = false) Integer userId){
+        if(userId == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         return ResponseEntity
                 .status(HttpStatus.OK)
                 .body(concertService.getConcertByLoggedInOwner(userId));
@@ -59,6 +73,45 @@ public class ConcertController {
                 .body(concertService.getConcertById(id));
     }
 
+    //Raw image bytes, the ETag is the content hash so unchanged images revalidate with a 304.
+    //size=list|detail|compressed selects a resized JPEG, the original is served until it exists
+    @GetMapping("/{id}/image")
+    public ResponseEntity<byte[]> getConcertImage(@PathVariable Integer id,
+                                                  @RequestParam(required = false) String size,
+                                                  WebRequest request){
+        String hash = concertService.getConcertImageHash(id);
+        Optional<ImageVariant> variant = size != null ? concertService.getImageVariant(hash, size) : Optional.empty();
+        String eTag = variant.map(ImageVariant::getVariantId).orElse(hash);
+        //Sets 304 on the response, the original is not loaded
+        if(request.checkNotModified(eTag)) return null;
+        CacheControl cacheControl = CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic();
+        if(variant.isPresent()){
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .contentType(MediaType.parseMediaType(variant.get().getContentType()))
+                    .body(variant.get().getData());
+        }
+        ImageBlob image = concertService.getImage(hash);
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .eTag(eTag)
+                //The original standing in for a missing variant is revalidated, the variant's ETag replaces it once made
+                .cacheControl(size != null ? CacheControl.noCache() : cacheControl)
+                .contentType(MediaType.parseMediaType(image.getContentType()))
+                .body(image.getData());
+    }
+
+    //Progress of the reschedule/cancellation mail jobs started on this instance, kept in memory only:
+    //jobs run by other instances are not listed and nothing survives a restart
+    @GetMapping("/{id}/notifications")
+    public ResponseEntity<List<NotificationJobDto>> getNotificationJobs(@PathVariable Integer id){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(concertService.getNotificationJobs(id));
+    }
+
     @GetMapping("/date/{date}")
     public ResponseEntity<List<ConcertDto>> getConcertByDate(@PathVariable @DateTimeFormat(pattern="yyyy-MM-dd")LocalDate date){
         return ResponseEntity
@@ -1,6 +1,7 @@
 package com.unipi.giguniverse.controller;
 
 import com.unipi.giguniverse.dto.ReservationDto;
+import com.unipi.giguniverse.security.JwtVerificationFilter;
 import com.unipi.giguniverse.service.ReservationService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,6 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @Slf4j
@@ -41,8 +43,11 @@ public class ReservationController {
 //    }
 
     // Microservices Implementation
-    @GetMapping("/owner/{userId}")
-    public ResponseEntity<List<ReservationDto>> getAllReservationsByLoggedInOwner(@PathVariable Integer userId){
+    //Caller from the verified JWT, see JwtVerificationFilter
+    @GetMapping("/owner")
+    public ResponseEntity<List<ReservationDto>> getReservationsOfCaller(
+            @RequestAttribute(name = JwtVerificationFilter.USER_ID, required = false) Integer userId){
+        if(userId == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         return ResponseEntity
                 .status(HttpStatus.OK)
                 .body(reservationService.getReservationsByLoggedInOwner(userId));
@@ -55,6 +60,27 @@ public class ReservationController {
                 .body(reservationService.updateReservation(reservationDto));
     }
 
+    @PutMapping("/reserve/{concertId}/{quantity}")
+    public ResponseEntity<ReservationDto> reserveTickets(@PathVariable Integer concertId, @PathVariable Integer quantity){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(reservationService.reserveTickets(concertId, quantity));
+    }
+
+    @PutMapping("/release/{concertId}/{quantity}")
+    public ResponseEntity<ReservationDto> releaseTickets(@PathVariable Integer concertId, @PathVariable Integer quantity){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(reservationService.releaseTickets(concertId, quantity));
+    }
+
+    @GetMapping("/availability")
+    public ResponseEntity<Map<Integer, Integer>> getAvailability(@RequestParam List<Integer> concertIds){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(reservationService.getAvailability(concertIds));
+    }
+
     @DeleteMapping("/delete/{reservationId}")
     public ResponseEntity<String> deleteReservation(@PathVariable Integer reservationId){
         return ResponseEntity
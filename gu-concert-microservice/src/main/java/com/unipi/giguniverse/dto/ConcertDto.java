@@ -28,5 +28,8 @@ public class ConcertDto {
     private double ticketPrice;
     @NotBlank(message = "Number of Tickets Required")
     private Integer ticketNumber;
+    //Base64 upload, responses carry imageUrl instead
     private String image;
+    private String imageUrl;
+    private String thumbnailUrl;
 }
\ No newline at end of file
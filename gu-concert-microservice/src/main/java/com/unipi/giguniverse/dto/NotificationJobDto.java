@@ -0,0 +1,28 @@
+package com.unipi.giguniverse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//Progress of one mail job, held in memory by the concert instance that ran it
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NotificationJobDto {
+
+    private String jobId;
+    private Integer concertId;
+    //RESCHEDULE or CANCELLATION
+    private String type;
+    //RUNNING, COMPLETED once the mails are committed to the outbox, FAILED if the change was rolled back
+    private String status;
+    private int total;
+    private int rendered;
+    private int failed;
+    private Instant started;
+    private Instant finished;
+}
@@ -0,0 +1,29 @@
+package com.unipi.giguniverse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+//Values a notification mail needs from a ticket, copied on the caller's thread so renderers never touch entities
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketMailDto {
+
+    private String ticketId;
+    private String ticketHolder;
+    private String ticketHolderEmail;
+    private double price;
+    private Date purchaseDate;
+    private String phone;
+    private String concertName;
+    private Date concertDate;
+    private String venueName;
+    private String venuePhone;
+    //Base64 PNG of the signed QR code, fetched from Ticket Microservice by the reschedule job
+    private String qrCode;
+}
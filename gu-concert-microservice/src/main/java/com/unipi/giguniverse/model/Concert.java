@@ -32,7 +32,9 @@ public class Concert {
     @Nullable
     @OneToOne(fetch = LAZY)
     private Reservation reservation;
+    //Legacy inline Base64 image, moved to the image store by ConcertImageMigration
     @Lob
     private String image;
+    private String imageHash;
 
 }
@@ -0,0 +1,29 @@
+package com.unipi.giguniverse.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Builder
+public class ImageBlob {
+
+    //SHA-256 of the image bytes, identical uploads share one row
+    @Id
+    private String hash;
+    private String contentType;
+    @Lob
+    private byte[] data;
+    private Instant created;
+    //Set when no resized variants can be made (undecodable or too large), the original is served for every size
+    private Boolean variantsUnavailable;
+}
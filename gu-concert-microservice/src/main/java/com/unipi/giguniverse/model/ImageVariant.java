@@ -0,0 +1,31 @@
+package com.unipi.giguniverse.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Builder
+public class ImageVariant {
+
+    //Original image hash and variant name, e.g. "<sha256>:LIST"
+    @Id
+    private String variantId;
+    private String imageHash;
+    private String variant;
+    private String contentType;
+    private int width;
+    private int height;
+    @Lob
+    private byte[] data;
+    private Instant created;
+}
@@ -0,0 +1,29 @@
+package com.unipi.giguniverse.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Builder
+public class TicketQRCode {
+
+    @Id
+    private String ticketId;
+    //SHA-256 of the encoded QR text, served as the image's ETag
+    private String contentHash;
+    //Ticket signing key the token was issued with, images of a retired key are rendered again
+    private String keyId;
+    @Lob
+    private byte[] image;
+    private Instant created;
+}
@@ -0,0 +1,9 @@
+package com.unipi.giguniverse.repository;
+
+//Remaining tickets of a concert, read without loading the concert graph
+public interface ConcertAvailability {
+
+    Integer getConcertId();
+
+    Integer getTicketNumber();
+}
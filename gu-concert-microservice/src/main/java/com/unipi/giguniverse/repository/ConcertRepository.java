@@ -2,18 +2,41 @@ package com.unipi.giguniverse.repository;
 
 import com.unipi.giguniverse.model.Concert;
 import com.unipi.giguniverse.model.Venue;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import java.time.LocalDate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ Listings are mapped to ConcertDto with venue and reservation details, so the list queries
+ fetch both associations in the same statement instead of one lazy load per concert.
+ */
 public interface ConcertRepository extends JpaRepository<Concert, Integer> {
 
-    List<Concert> findByDate(LocalDate date);
+    @Override
+    @EntityGraph(attributePaths = {"venue", "reservation"})
+    List<Concert> findAll();
+
+    @EntityGraph(attributePaths = {"venue", "reservation"})
     List<Concert> findByVenue(Venue venue);
-    List<Concert> findByDateGreaterThanAndDateLessThan(LocalDate start, LocalDate end);
+    //Half open range on the timestamp column, backs the day and month listings
+    @EntityGraph(attributePaths = {"venue", "reservation"})
+    List<Concert> findByDateGreaterThanEqualAndDateLessThan(Date start, Date end);
 
+    @EntityGraph(attributePaths = {"venue", "reservation"})
     List<Concert>findByVenueOwnerUserId(int userId);
+
+    @EntityGraph(attributePaths = {"venue", "reservation"})
+    List<Concert> findByConcertIdGreaterThanOrderByConcertIdAsc(int concertId, Pageable pageable);
+
+    List<Concert> findByImageIsNotNull(Pageable pageable);
+
+    @Query("select c.imageHash from Concert c where c.concertId = :concertId and c.imageHash is not null")
+    Optional<String> findImageHashByConcertId(@Param("concertId") Integer concertId);
 }
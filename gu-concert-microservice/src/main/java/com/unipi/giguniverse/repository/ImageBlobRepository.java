@@ -0,0 +1,19 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.ImageBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+
+    //Answered without loading the image bytes
+    boolean existsByHashAndVariantsUnavailableTrue(String hash);
+
+    @Transactional
+    @Modifying
+    @Query("update ImageBlob b set b.variantsUnavailable = true where b.hash = :hash")
+    int markVariantsUnavailable(@Param("hash") String hash);
+}
@@ -0,0 +1,7 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.ImageVariant;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ImageVariantRepository extends JpaRepository<ImageVariant, String> {
+}
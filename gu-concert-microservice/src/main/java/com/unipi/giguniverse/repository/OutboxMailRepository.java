@@ -0,0 +1,21 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.OutboxMail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.List;
+
+public interface OutboxMailRepository extends JpaRepository<OutboxMail, Long> {
+
+    //Rows locked by another dispatcher are skipped (lock timeout -2 is SKIP LOCKED in Hibernate)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    List<OutboxMail> findByStatusAndNextAttemptLessThanEqualOrderByMailIdAsc(OutboxMail.Status status, Instant now,
+                                                                              Pageable pageable);
+}
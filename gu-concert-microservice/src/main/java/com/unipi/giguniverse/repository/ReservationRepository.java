@@ -2,6 +2,9 @@ package com.unipi.giguniverse.repository;
 
 import com.unipi.giguniverse.model.Reservation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +14,19 @@ public interface ReservationRepository extends JpaRepository<Reservation,Integer
     List<Reservation> findByOwnerUserId(int userId);
 
     Optional<Reservation> findByConcert_ConcertId (int concertId);
+
+    @Query("select c.concertId as concertId, r.ticketNumber as ticketNumber " +
+            "from Reservation r join r.concert c where c.concertId in :concertIds")
+    List<ConcertAvailability> findAvailabilityByConcertIds(@Param("concertIds") List<Integer> concertIds);
+
+    // Conditional UPDATE, decrements only when enough tickets are left (returns 0 otherwise)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Reservation r set r.ticketNumber = r.ticketNumber - :quantity " +
+            "where r.reservationId = :reservationId and r.ticketNumber >= :quantity")
+    int decrementTicketNumber(@Param("reservationId") int reservationId, @Param("quantity") int quantity);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Reservation r set r.ticketNumber = r.ticketNumber + :quantity " +
+            "where r.reservationId = :reservationId")
+    int incrementTicketNumber(@Param("reservationId") int reservationId, @Param("quantity") int quantity);
 }
@@ -0,0 +1,16 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.TicketQRCode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+
+public interface TicketQRCodeRepository extends JpaRepository<TicketQRCode, String> {
+
+    @Modifying
+    @Query("delete from TicketQRCode q where q.ticketId in :ticketIds")
+    int deleteByTicketIds(@Param("ticketIds") Collection<String> ticketIds);
+}
@@ -1,6 +1,7 @@
 package com.unipi.giguniverse.repository;
 
 import com.unipi.giguniverse.model.Ticket;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
@@ -18,5 +19,9 @@ public interface TicketRepository extends JpaRepository<Ticket, String> {
 
     List<Ticket> deleteByReservationReservationId(Integer reservationId);
 
+    //Reservation, concert and venue in the same query, notification mails read all of them for every ticket
+    @EntityGraph(attributePaths = {"reservation.concert.venue"})
+    List<Ticket> findWithConcertByReservationReservationId(Integer reservationId);
+
 //    List<Ticket> findByAttendant(Attendant ticketBuyer);
 }
@@ -0,0 +1,8 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.TicketRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+//Written when a cancelled concert's tickets are deleted, the ticket microservice publishes them with the gate manifest
+public interface TicketRevocationRepository extends JpaRepository<TicketRevocation, String> {
+}
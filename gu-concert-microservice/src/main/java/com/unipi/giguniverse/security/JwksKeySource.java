@@ -0,0 +1,85 @@
+package com.unipi.giguniverse.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ Public keys of gu-user-microservice for JwtVerificationFilter, read from its JWKS endpoint (jwt.jwks-uri).
+ Loaded on the first /api/concert/owner or /api/reservation/owner call and reloaded when a token names
+ a key id we do not know yet, at most once per jwt.jwks-refresh-seconds.
+ */
+@Component
+@Slf4j
+public class JwksKeySource {
+
+    private final WebClient webClient;
+    private final String jwksUri;
+    private final Duration refreshInterval;
+    private volatile Map<String, PublicKey> keys = Map.of();
+    private Instant lastRefresh = Instant.EPOCH;
+
+    public JwksKeySource(WebClient.Builder webClientBuilder,
+                         @Value("${jwt.jwks-uri:lb://gu-user-microservice/api/auth/jwks}") String jwksUri,
+                         @Value("${jwt.jwks-refresh-seconds:30}") long refreshSeconds){
+        this.webClient = webClientBuilder.clone().build();
+        this.jwksUri = jwksUri;
+        this.refreshInterval = Duration.ofSeconds(refreshSeconds);
+    }
+
+    //Null when the key id is still unknown after a refresh
+    public PublicKey getKey(String keyId){
+        PublicKey key = keys.get(keyId);
+        if(key == null){
+            refresh();
+            key = keys.get(keyId);
+        }
+        return key;
+    }
+
+    private synchronized void refresh(){
+        Instant now = Instant.now();
+        if(now.isBefore(lastRefresh.plus(refreshInterval))) return;
+        lastRefresh = now;
+        try {
+            Map<String, List<Map<String, String>>> jwks = webClient
+                    .get()
+                    .uri(jwksUri)
+                    .retrieve()
+                    .bodyToMono(new ParameterizedTypeReference<Map<String, List<Map<String, String>>>>() {
+                    })
+                    .block(Duration.ofSeconds(5));
+            Map<String, PublicKey> loaded = new HashMap<>();
+            for(Map<String, String> jwk : jwks.getOrDefault("keys", List.of())){
+                if("RSA".equals(jwk.get("kty"))) loaded.put(jwk.get("kid"), toPublicKey(jwk));
+            }
+            keys = Map.copyOf(loaded);
+            log.info("Loaded {} JWT verification keys from {}", loaded.size(), jwksUri);
+        }
+        catch (RuntimeException | GeneralSecurityException e){
+            //Keep the keys we have, tokens signed with them still verify
+            log.warn("Failed to load JWT verification keys from {}", jwksUri, e);
+        }
+    }
+
+    private static PublicKey toPublicKey(Map<String, String> jwk) throws GeneralSecurityException {
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        BigInteger modulus = new BigInteger(1, decoder.decode(jwk.get("n")));
+        BigInteger exponent = new BigInteger(1, decoder.decode(jwk.get("e")));
+        return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent));
+    }
+}
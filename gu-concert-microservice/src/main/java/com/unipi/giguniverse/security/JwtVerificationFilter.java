@@ -0,0 +1,76 @@
+package com.unipi.giguniverse.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.Key;
+import java.util.Set;
+
+import static io.jsonwebtoken.Jwts.parser;
+
+/**
+ Verifies the JWT the gateway forwards on GET /api/concert/owner and /api/reservation/owner against the
+ user service's public keys and exposes the caller as the userId request attribute, the endpoints answer 401
+ when it is missing.
+ Other requests are not filtered, they never read the caller.
+ */
+@Component
+@Slf4j
+public class JwtVerificationFilter extends OncePerRequestFilter {
+
+    public static final String USER_ID = "userId";
+    private static final Set<String> CALLER_PATHS = Set.of("/api/concert/owner", "/api/reservation/owner");
+
+    private final SigningKeyResolver signingKeyResolver;
+
+    public JwtVerificationFilter(JwksKeySource jwksKeySource){
+        this.signingKeyResolver = new SigningKeyResolverAdapter() {
+            @Override
+            public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                //Access tokens always expire, ticket QR tokens do not
+                if(claims.getExpiration() == null){
+                    throw new JwtException("Not an access token");
+                }
+                Key key = header.getKeyId() != null ? jwksKeySource.getKey(header.getKeyId()) : null;
+                if(key == null) throw new JwtException("Unknown key id: " + header.getKeyId());
+                return key;
+            }
+        };
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request){
+        return !CALLER_PATHS.contains(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String bearerToken = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if(bearerToken != null && bearerToken.startsWith("Bearer ")){
+            try {
+                Claims claims = parser()
+                        .setSigningKeyResolver(signingKeyResolver)
+                        .parseClaimsJws(bearerToken.substring(7))
+                        .getBody();
+                request.setAttribute(USER_ID, claims.get(USER_ID, Integer.class));
+            }
+            catch (JwtException | IllegalArgumentException e){
+                log.debug("Ignoring invalid JWT: {}", e.getMessage());
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+}
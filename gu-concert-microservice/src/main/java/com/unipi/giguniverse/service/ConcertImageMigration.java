@@ -0,0 +1,38 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ Moves images still stored inline in the concert table into the image store,
+ a few rows per transaction so startup does not hold every image in memory.
+ */
+@Component
+@AllArgsConstructor
+@Slf4j
+public class ConcertImageMigration {
+
+    private static final int BATCH_SIZE = 20;
+
+    private final ConcertService concertService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInlineImages(){
+        int migrated = 0;
+        int batch;
+        try {
+            while((batch = concertService.moveInlineImagesToStore(BATCH_SIZE)) > 0){
+                migrated += batch;
+            }
+        }
+        catch (ApplicationException e){
+            //The failed batch is rolled back and stays inline, startup carries on
+            log.warn("Concert image migration stopped: {}", e.getMessage());
+        }
+        if(migrated > 0) log.info("Moved {} concert images to the image store", migrated);
+    }
+}
@@ -0,0 +1,271 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.client.TicketClient;
+import com.unipi.giguniverse.dto.NotificationJobDto;
+import com.unipi.giguniverse.dto.TicketMailDto;
+import com.unipi.giguniverse.model.Concert;
+import com.unipi.giguniverse.model.OutboxMail;
+import com.unipi.giguniverse.model.Ticket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ Reschedule and cancellation mails for every ticket of a concert. The tickets come fetch joined with
+ reservation, concert and venue and only their values are copied on the caller's thread, nothing is rendered
+ in the caller's transaction. Once it commits the job runs on its own thread chunk by chunk: a reschedule fetches
+ the signed QR codes from Ticket Microservice, which owns the signing key, the mails are rendered on a
+ ForkJoinPool from plain TicketMailDto values and every chunk is written to the outbox in its own transaction.
+ A rolled back change sends nothing, chunks not yet written when the instance stops are lost.
+ Progress of recent jobs is kept in memory on the instance that ran them, see getJobs.
+ */
+@Service
+@Slf4j
+public class ConcertNotificationService {
+
+    private static final int MAX_JOBS = 100;
+    private static final String TICKET_BASE_URI = "lb://gu-ticket-microservice/api/ticket";
+
+    private final MailService mailService;
+    private final MailOutboxService mailOutboxService;
+    private final TicketClient ticketClient;
+    private final ForkJoinPool renderPool;
+    //Jobs run one after another, their chunks are rendered in parallel on renderPool
+    private final ExecutorService jobRunner;
+    private final int chunkSize;
+    private final Map<String, Job> jobs = new LinkedHashMap<>(){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Job> eldest){
+            return size() > MAX_JOBS;
+        }
+    };
+
+    public ConcertNotificationService(MailService mailService,
+                                      MailOutboxService mailOutboxService,
+                                      TicketClient ticketClient,
+                                      @Value("${notification.render.parallelism:0}") int parallelism,
+                                      @Value("${notification.render.chunk-size:200}") int chunkSize){
+        this.mailService = mailService;
+        this.mailOutboxService = mailOutboxService;
+        this.ticketClient = ticketClient;
+        //Rendering is CPU bound, 0 means one worker per core
+        this.renderPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.jobRunner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.chunkSize = chunkSize;
+    }
+
+    public void notifyReschedule(int concertId, List<Ticket> tickets){
+        List<TicketMailDto> mailDtos = toMailDtos(tickets);
+        afterCommit(() -> start(concertId, "RESCHEDULE", mailDtos, this::withQRCodes,
+                ticket -> mailService.renderRescheduleMail(ticket, ticket.getQrCode())));
+    }
+
+    public void notifyCancellation(int concertId, List<Ticket> tickets){
+        List<TicketMailDto> mailDtos = toMailDtos(tickets);
+        afterCommit(() -> start(concertId, "CANCELLATION", mailDtos, UnaryOperator.identity(),
+                mailService::renderCancellationMail));
+    }
+
+    //Jobs started on this instance only, another instance behind the load balancer answers with its own
+    public List<NotificationJobDto> getJobs(Integer concertId){
+        synchronized (jobs){
+            return jobs.values().stream()
+                    .filter(job -> job.concertId == concertId)
+                    .map(Job::toDto)
+                    .collect(toList());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        jobRunner.shutdown();
+        renderPool.shutdown();
+    }
+
+    //Runs on the caller's thread, so the entities are read in their own session
+    private List<TicketMailDto> toMailDtos(List<Ticket> tickets){
+        return tickets.stream()
+                .map(ticket -> {
+                    Concert concert = ticket.getReservation().getConcert();
+                    return TicketMailDto.builder()
+                            .ticketId(ticket.getTicketId())
+                            .ticketHolder(ticket.getTicketHolder())
+                            .ticketHolderEmail(ticket.getTicketHolderEmail())
+                            .price(ticket.getPrice())
+                            .purchaseDate(ticket.getPurchaseDate())
+                            .phone(ticket.getPhone())
+                            .concertName(concert.getConcertName())
+                            .concertDate(concert.getDate())
+                            .venueName(concert.getVenue().getVenueName())
+                            .venuePhone(concert.getVenue().getPhone())
+                            .build();
+                })
+                .collect(toList());
+    }
+
+    private void afterCommit(Runnable action){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit(){
+                action.run();
+            }
+        });
+    }
+
+    private void start(int concertId, String type, List<TicketMailDto> tickets,
+                       UnaryOperator<List<TicketMailDto>> prepare, Function<TicketMailDto, OutboxMail> renderer){
+        Job job = new Job(concertId, type, tickets.size());
+        synchronized (jobs){
+            jobs.put(job.jobId, job);
+        }
+        try {
+            jobRunner.execute(() -> run(job, tickets, prepare, renderer));
+        }
+        catch (RejectedExecutionException e){
+            job.finish("FAILED");
+            log.error("{} job {} for concert {} was not started", type, job.jobId, concertId, e);
+        }
+    }
+
+    private void run(Job job, List<TicketMailDto> tickets,
+                     UnaryOperator<List<TicketMailDto>> prepare, Function<TicketMailDto, OutboxMail> renderer){
+        try {
+            List<CompletableFuture<Void>> chunks = new ArrayList<>();
+            for(int from = 0; from < tickets.size(); from += chunkSize){
+                List<TicketMailDto> chunk = tickets.subList(from, Math.min(from + chunkSize, tickets.size()));
+                List<TicketMailDto> prepared;
+                try {
+                    prepared = prepare.apply(chunk);
+                }
+                catch (RuntimeException e){
+                    job.failed.addAndGet(chunk.size());
+                    log.warn("Failed to prepare {} mails of job {}", job.type, job.jobId, e);
+                    continue;
+                }
+                job.failed.addAndGet(chunk.size() - prepared.size());
+                //The next chunk is prepared while this one renders
+                chunks.add(CompletableFuture.supplyAsync(() -> renderChunk(job, prepared, renderer), renderPool)
+                        .thenAccept(mails -> enqueue(job, mails)));
+            }
+            CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).join();
+            job.finish("COMPLETED");
+            log.info("{} job {} queued {} of {} mails for concert {}",
+                    job.type, job.jobId, job.rendered.get(), job.total, job.concertId);
+        }
+        catch (RuntimeException e){
+            job.finish("FAILED");
+            log.error("{} job {} for concert {} failed", job.type, job.jobId, job.concertId, e);
+        }
+    }
+
+    //Signed by Ticket Microservice, it only renders a new QR code for tickets without one for its current key
+    private List<TicketMailDto> withQRCodes(List<TicketMailDto> chunk){
+        Map<String, String> qrCodes = ticketClient
+                .post()
+                .uri(TICKET_BASE_URI + "/qrcodes")
+                .bodyValue(chunk.stream().map(TicketMailDto::getTicketId).collect(toList()))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, String>>() {
+                })
+                .block();
+        //Tickets deleted since the change have no QR code and get no mail
+        return chunk.stream()
+                .filter(ticket -> qrCodes != null && qrCodes.containsKey(ticket.getTicketId()))
+                .peek(ticket -> ticket.setQrCode(qrCodes.get(ticket.getTicketId())))
+                .collect(toList());
+    }
+
+    //One transaction per chunk
+    private void enqueue(Job job, List<OutboxMail> mails){
+        try {
+            mailOutboxService.enqueueAll(mails);
+        }
+        catch (RuntimeException e){
+            job.rendered.addAndGet(-mails.size());
+            job.failed.addAndGet(mails.size());
+            log.warn("Failed to queue {} {} mails of job {}", mails.size(), job.type, job.jobId, e);
+        }
+    }
+
+    private List<OutboxMail> renderChunk(Job job, List<TicketMailDto> chunk, Function<TicketMailDto, OutboxMail> renderer){
+        List<OutboxMail> mails = new ArrayList<>(chunk.size());
+        for(TicketMailDto ticket : chunk){
+            try {
+                mails.add(renderer.apply(ticket));
+                job.rendered.incrementAndGet();
+            }
+            catch (RuntimeException e){
+                job.failed.incrementAndGet();
+                log.warn("Failed to render {} mail for ticket {}", job.type, ticket.getTicketId(), e);
+            }
+        }
+        return mails;
+    }
+
+    private static class Job {
+
+        private final String jobId = UUID.randomUUID().toString();
+        private final int concertId;
+        private final String type;
+        private final int total;
+        private final AtomicInteger rendered = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final Instant started = Instant.now();
+        private volatile String status = "RUNNING";
+        private volatile Instant finished;
+
+        private Job(int concertId, String type, int total){
+            this.concertId = concertId;
+            this.type = type;
+            this.total = total;
+        }
+
+        private void finish(String status){
+            this.finished = Instant.now();
+            this.status = status;
+        }
+
+        private NotificationJobDto toDto(){
+            return NotificationJobDto.builder()
+                    .jobId(jobId)
+                    .concertId(concertId)
+                    .type(type)
+                    .status(status)
+                    .total(total)
+                    .rendered(rendered.get())
+                    .failed(failed.get())
+                    .started(started)
+                    .finished(finished)
+                    .build();
+        }
+    }
+}
@@ -1,26 +1,32 @@
 package com.unipi.giguniverse.service;
 
+import com.unipi.giguniverse.client.VenueClient;
 import com.unipi.giguniverse.dto.ConcertDto;
+import com.unipi.giguniverse.dto.NotificationJobDto;
 import com.unipi.giguniverse.dto.VenueDto;
 import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.*;
 
 import com.unipi.giguniverse.repository.ConcertRepository;
 import com.unipi.giguniverse.repository.ReservationRepository;
+import com.unipi.giguniverse.repository.TicketQRCodeRepository;
 import com.unipi.giguniverse.repository.TicketRepository;
+import com.unipi.giguniverse.repository.TicketRevocationRepository;
 //import com.unipi.giguniverse.repository.VenueRepository;
 
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 import javax.transaction.Transactional;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
@@ -41,22 +47,26 @@ public class ConcertService {
     private final String VENUE_BASE_URI = "lb://gu-venue-microservice/api/venue";
     //Resilience4j Configuration
     public static final String CONCERT_MICROSERVICE = "ConcertMicroservice";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
 
     private final ConcertRepository concertRepository;
 //    private final VenueRepository venueRepository; // Microservices
     private final ReservationRepository reservationRepository;
     private final TicketRepository ticketRepository;
-    private final MailService mailService;
-    private final QRGeneratorService qrGeneratorService;
+    private final TicketRevocationRepository ticketRevocationRepository;
+    private final TicketQRCodeRepository ticketQRCodeRepository;
+    private final ConcertNotificationService concertNotificationService;
+    private final ImageStoreService imageStoreService;
     // Microservices version addition
-    private WebClient.Builder webClientBuilder;
+    private final VenueClient venueClient;
 
     ConcertDto mapConcertToDto(Concert concert){
-        Reservation reservation = reservationRepository
-                .getOne(Objects.requireNonNull(concert.getReservation()).getReservationId());
+        //Fetched together with the concert by the listing queries
+        Reservation reservation = Objects.requireNonNull(concert.getReservation());
         return ConcertDto.builder()
                 .concertId(concert.getConcertId())
-                .reservationId(concert.getReservation().getReservationId())
+                .reservationId(reservation.getReservationId())
                 .concertName(concert.getConcertName())
                 .description(concert.getDescription())
                 .venueId(concert.getVenue().getVenueId())
@@ -64,10 +74,20 @@ public class ConcertService {
                 .date(concert.getDate())
                 .ticketNumber(reservation.getTicketNumber())
                 .ticketPrice(reservation.getTicketPrice())
-                .image(concert.getImage())
+                .imageUrl(imageUrlOf(concert))
+                .thumbnailUrl(thumbnailUrlOf(concert))
                 .build();
     }
 
+    private String imageUrlOf(Concert concert){
+        return concert.getImageHash() != null ? "/api/concert/" +concert.getConcertId() +"/image" : null;
+    }
+
+    //List sized variant for browsing, see ImageVariantService
+    private String thumbnailUrlOf(Concert concert){
+        return concert.getImageHash() != null ? imageUrlOf(concert) +"?size=list" : null;
+    }
+
     // Monolithic Implementation
 //    private Concert mapConcertDto(ConcertDto concertDto){
 //        return Concert.builder()
@@ -84,7 +104,7 @@ public class ConcertService {
     @CircuitBreaker(name = CONCERT_MICROSERVICE)
     private Concert mapConcertDto(ConcertDto concertDto){
 
-        Mono<Venue> response = webClientBuilder.build()
+        Mono<Venue> response = venueClient
                 .get()
                 .uri(VENUE_BASE_URI +"/" +concertDto.getVenueId())
                 .retrieve()
@@ -95,7 +115,7 @@ public class ConcertService {
                 .description(concertDto.getDescription())
                 .venue(response.block())
                 .date(concertDto.getDate())
-                .image(concertDto.getImage())
+                .imageHash(concertDto.getImage() != null ? imageStoreService.store(concertDto.getImage()) : null)
                 .build();
     }
 
@@ -122,22 +142,37 @@ public class ConcertService {
         return concertDto;
     }
 
-    public List<ConcertDto> getAllConcerts(){
-        List<ConcertDto> concerts = concertRepository.findAll()
+    public List<ConcertDto> getAllConcerts(Integer after, Integer limit){
+        List<ConcertDto> concerts = concertRepository
+                .findByConcertIdGreaterThanOrderByConcertIdAsc(after == null ? 0 : after, pageOf(limit))
                 .stream()
                 .map(this::mapConcertToDto)
                 .collect(toList());
         return concerts;
     }
 
+    // Keyset pagination: a page holds at most limit rows ordered by id, the next one starts after the last id returned
+    private Pageable pageOf(Integer limit){
+        return PageRequest.of(0, pageSize(limit));
+    }
+
+    public static int pageSize(Integer limit){
+        return limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
     public List<ConcertDto> getConcertByDate(LocalDate date){
-        List<ConcertDto> concerts = concertRepository.findByDate(date)
+        List<ConcertDto> concerts = concertRepository.findByDateGreaterThanEqualAndDateLessThan(startOf(date), startOf(date.plusDays(1)))
                 .stream()
                 .map(this::mapConcertToDto)
                 .collect(toList());
         return concerts;
     }
 
+    //Concert dates are timestamps, a day spans from its start to the start of the next one
+    private Date startOf(LocalDate day){
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
     public List<ConcertDto> getConcertByVenue(Venue venue){
         List<ConcertDto> concerts = concertRepository.findByVenue(venue)
                 .stream()
@@ -147,8 +182,8 @@ public class ConcertService {
     }
     public List<ConcertDto> getConcertByMonth(LocalDate date){
         LocalDate start = date.withDayOfMonth(1);
-        LocalDate end = date.plusMonths(1).withDayOfMonth(1).minusDays(1);
-        List<ConcertDto> concerts = concertRepository.findByDateGreaterThanAndDateLessThan(start,end)
+        LocalDate end = start.plusMonths(1);
+        List<ConcertDto> concerts = concertRepository.findByDateGreaterThanEqualAndDateLessThan(startOf(start), startOf(end))
                 .stream()
                 .map(this::mapConcertToDto)
                 .collect(toList());
@@ -205,7 +240,7 @@ public class ConcertService {
     @CircuitBreaker(name = CONCERT_MICROSERVICE)
     public ConcertDto updateConcert(ConcertDto concertDto){
 
-        Mono<Venue> response = webClientBuilder.build()
+        Mono<Venue> response = venueClient
                 .get()
                 .uri(VENUE_BASE_URI +"/" +concertDto.getVenueId())
                 .retrieve()
@@ -222,7 +257,8 @@ public class ConcertService {
         existingConcert.setDescription(concertDto.getDescription());
         existingConcert.setVenue(response.block());
         existingConcert.setDate(concertDto.getDate());
-        existingConcert.setImage(concertDto.getImage());
+        //Responses carry only the image url, keep the stored image unless a new one is uploaded
+        if(concertDto.getImage() != null) existingConcert.setImageHash(imageStoreService.store(concertDto.getImage()));
         reservation.setTicketPrice(concertDto.getTicketPrice());
         concertRepository.save(existingConcert);
         //if concert date has changed then notify users
@@ -232,6 +268,29 @@ public class ConcertService {
         return mapConcertToDto(existingConcert);
     }
 
+    public String getConcertImageHash(Integer concertId){
+        return concertRepository.findImageHashByConcertId(concertId)
+                .orElseThrow(()->new ApplicationException("Image not found"));
+    }
+
+    public ImageBlob getImage(String hash){
+        return imageStoreService.getImage(hash);
+    }
+
+    public Optional<ImageVariant> getImageVariant(String hash, String size){
+        return imageStoreService.getImageVariant(hash, size);
+    }
+
+    //Legacy rows keep a Base64 image inline, see ConcertImageMigration
+    public int moveInlineImagesToStore(int batchSize){
+        List<Concert> concerts = concertRepository.findByImageIsNotNull(PageRequest.of(0, batchSize));
+        for(Concert concert : concerts){
+            concert.setImageHash(imageStoreService.store(concert.getImage()));
+            concert.setImage(null);
+        }
+        return concerts.size();
+    }
+
     public String deleteConcert(Integer concertId) {
         cancelConcertDeleteTicketsAndUserEmail(concertId);
         Concert existingConcert = concertRepository.getOne(concertId);
@@ -263,6 +322,9 @@ public class ConcertService {
         concertDto.setReservationId(reservationId);
         concertDto.setTicketNumber(reservation.getTicketNumber());
         concertDto.setVenue(mapVenueToVenueDto(concert.getVenue()));
+        concertDto.setImage(null);
+        concertDto.setImageUrl(imageUrlOf(concert));
+        concertDto.setThumbnailUrl(thumbnailUrlOf(concert));
         return concertDto;
     }
 
@@ -270,23 +332,34 @@ public class ConcertService {
         Reservation reservation = reservationRepository.findByConcert_ConcertId(concertId)
                 .orElseThrow(()->new ApplicationException("Reservation not found"));
 
-        List<Ticket> tickets = ticketRepository.deleteByReservationReservationId(reservation.getReservationId());
-
-        for(Ticket ticket: tickets){
-            //Fixes the null connection between classes
-            ticket.getReservation().getConcert().getVenue().getVenueName();
-            //Send mail to ticket holders
-            mailService.cancelConcertNotificationEmail(ticket);
+        //Loaded with concert and venue before the delete, the mail values are copied from these entities
+        List<Ticket> tickets = ticketRepository.findWithConcertByReservationReservationId(reservation.getReservationId());
+        //Send mail to ticket holders
+        concertNotificationService.notifyCancellation(concertId, tickets);
+        //Revoked like single deletes, so gates holding an older manifest reject the tickets
+        Date revokedDate = Date.from(Instant.now());
+        ticketRevocationRepository.saveAll(tickets.stream()
+                .map(ticket -> TicketRevocation.builder()
+                        .ticketId(ticket.getTicketId())
+                        .concertId(concertId)
+                        .revokedDate(revokedDate)
+                        .build())
+                .collect(toList()));
+        ticketRepository.deleteAll(tickets);
+        //Stored by Ticket Microservice in the shared schema, gone with their tickets
+        if(!tickets.isEmpty()){
+            ticketQRCodeRepository.deleteByTicketIds(tickets.stream().map(Ticket::getTicketId).collect(toList()));
         }
     }
 
     private void notifyUserForConcertChanges(Concert concert){
         List<Ticket> tickets = ticketRepository
-                .findByReservationReservationId(concert.getReservation().getReservationId());
-        for(Ticket ticket : tickets){
-            String qrCode = qrGeneratorService.generateQRCodeImageToString(ticket);
-            mailService.rescheduleConcertNotificationEmail(ticket, qrCode);
-        }
+                .findWithConcertByReservationReservationId(concert.getReservation().getReservationId());
+        concertNotificationService.notifyReschedule(concert.getConcertId(), tickets);
+    }
+
+    public List<NotificationJobDto> getNotificationJobs(Integer concertId){
+        return concertNotificationService.getJobs(concertId);
     }
 
 }
@@ -0,0 +1,219 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import com.unipi.giguniverse.model.ImageVariant;
+import com.unipi.giguniverse.repository.ImageBlobRepository;
+import com.unipi.giguniverse.repository.ImageVariantRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ Resized JPEG variants of stored images, produced off the request thread by a small fixed pool.
+ Each original is decoded once and every variant is rendered from that decoded image.
+ Until a variant exists the original is served, a full queue drops the job and the
+ variant is requested again on the next read. Images that cannot be decoded or exceed MAX_PIXELS
+ are marked on their ImageBlob and never queued again.
+ */
+@Service
+@Slf4j
+public class ImageVariantService {
+
+    public enum Variant {
+        LIST(320, 0.75f),
+        DETAIL(1024, 0.8f),
+        COMPRESSED(2048, 0.85f);
+
+        private final int maxWidth;
+        private final float quality;
+
+        Variant(int maxWidth, float quality){
+            this.maxWidth = maxWidth;
+            this.quality = quality;
+        }
+    }
+
+    //Larger images are not decoded, 40 megapixels is already ~160MB as ARGB
+    private static final long MAX_PIXELS = 40_000_000L;
+
+    private final ImageVariantRepository imageVariantRepository;
+    private final ImageBlobRepository imageBlobRepository;
+    private final ThreadPoolExecutor executor;
+    //Hashes with a job queued or running, the same image is not processed twice at once
+    private final ConcurrentHashMap.KeySetView<String, Boolean> pending = ConcurrentHashMap.newKeySet();
+
+    public ImageVariantService(ImageVariantRepository imageVariantRepository,
+                               ImageBlobRepository imageBlobRepository,
+                               @Value("${image.variants.threads:2}") int threads,
+                               @Value("${image.variants.queue-size:100}") int queueSize){
+        this.imageVariantRepository = imageVariantRepository;
+        this.imageBlobRepository = imageBlobRepository;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "image-variants-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static Variant variantOf(String size){
+        for(Variant variant : Variant.values()){
+            if(variant.name().equalsIgnoreCase(size)) return variant;
+        }
+        throw new ApplicationException("Unknown image size: " + size);
+    }
+
+    public Optional<ImageVariant> getVariant(String imageHash, Variant variant){
+        return imageVariantRepository.findById(variantId(imageHash, variant));
+    }
+
+    //Uploads pass the bytes they already hold
+    public void generateAsync(String imageHash, byte[] original){
+        submit(imageHash, () -> generate(imageHash, original));
+    }
+
+    //Reads of a missing variant, checked before any bytes are loaded, the worker loads the original itself
+    public void requestVariants(String imageHash){
+        if(pending.contains(imageHash) || imageBlobRepository.existsByHashAndVariantsUnavailableTrue(imageHash)) return;
+        submit(imageHash, () -> imageBlobRepository.findById(imageHash)
+                .ifPresent(image -> generate(imageHash, image.getData())));
+    }
+
+    private void submit(String imageHash, Runnable job){
+        if(!pending.add(imageHash)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    job.run();
+                }
+                finally {
+                    pending.remove(imageHash);
+                }
+            });
+        }
+        catch (RejectedExecutionException e){
+            pending.remove(imageHash);
+            log.warn("Image variant queue full, skipped {}", imageHash);
+        }
+    }
+
+    void generate(String imageHash, byte[] original){
+        BufferedImage source;
+        try {
+            source = decode(original);
+        }
+        catch (IOException | RuntimeException e){
+            log.warn("Image {} could not be decoded: {}", imageHash, e.getMessage());
+            source = null;
+        }
+        if(source == null){
+            //Permanent, the original is served for every size from now on
+            imageBlobRepository.markVariantsUnavailable(imageHash);
+            return;
+        }
+        try {
+            for(Variant variant : Variant.values()){
+                BufferedImage resized = resize(source, variant.maxWidth);
+                imageVariantRepository.save(ImageVariant.builder()
+                        .variantId(variantId(imageHash, variant))
+                        .imageHash(imageHash)
+                        .variant(variant.name())
+                        .contentType(MediaType.IMAGE_JPEG_VALUE)
+                        .width(resized.getWidth())
+                        .height(resized.getHeight())
+                        .data(encodeJpeg(resized, variant.quality))
+                        .created(Instant.now())
+                        .build());
+            }
+        }
+        catch (IOException | RuntimeException e){
+            log.warn("Image variants of {} were not generated: {}", imageHash, e.getMessage());
+        }
+    }
+
+    //Checks the dimensions in the header before decoding any pixels
+    private BufferedImage decode(byte[] original) throws IOException {
+        try(ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(original))){
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if((long) reader.getWidth(0) * reader.getHeight(0) > MAX_PIXELS) return null;
+                return reader.read(0);
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    //Never upscales, transparent areas become white since JPEG has no alpha
+    private BufferedImage resize(BufferedImage source, int maxWidth){
+        int width = Math.min(source.getWidth(), maxWidth);
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(ImageOutputStream output = ImageIO.createImageOutputStream(out)){
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private String variantId(String imageHash, Variant variant){
+        return imageHash + ":" + variant.name();
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        executor.shutdownNow();
+    }
+}
@@ -1,76 +1,92 @@
 package com.unipi.giguniverse.service;
 
+import com.unipi.giguniverse.dto.TicketMailDto;
+import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.Ticket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
-import org.springframework.util.Base64Utils;
+import org.springframework.util.StreamUtils;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import javax.mail.MessagingException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 
+@Slf4j
 @Service
 public class MailContentBuilder {
 
+    //Templates show the logo as <img src="cid:logo">, the PNG is attached to the mail instead of inlined as Base64
+    public static final String LOGO_CID = "logo";
+    private static final List<String> TEMPLATES = List.of("ticketTemplate", "rescheduleConcertTemplate",
+            "cancelConcertTemplate", "activationTemplate");
+
     private final TemplateEngine templateEngine;
-    private final String pngDataB64;
-    private final ResourceLoader resourceLoader;
+    private final Resource logo;
 
-    MailContentBuilder(TemplateEngine templateEngine, ResourceLoader resourceLoader){
+    public MailContentBuilder(TemplateEngine templateEngine, ResourceLoader resourceLoader){
         this.templateEngine = templateEngine;
-        this.resourceLoader = resourceLoader;
-        this.pngDataB64 = pngToBase64Converter();
+        this.logo = loadLogo(resourceLoader);
     }
 
-//    String build(String message){
-//        Context context = new Context();
-//        context.setVariable("message", message);
-//        return templateEngine.process("mailTemplate", context);
-//    }
-
-    String buildTicketMail(Ticket ticket, String qrString){
-
+    //Parsed templates are cached (spring.thymeleaf.cache), parse them all before the first mail goes out
+    @EventListener(ApplicationReadyEvent.class)
+    public void precompileTemplates(){
         Context context = new Context();
-        context.setVariable("logo", pngDataB64);
-        context.setVariable("name", ticket.getTicketHolder());
-        context.setVariable("email", ticket.getTicketHolderEmail());
-        context.setVariable("price", ticket.getPrice());
-        context.setVariable("purchaseDate", ticket.getPurchaseDate());
-        context.setVariable("phone", ticket.getPhone());
-        context.setVariable("concert", ticket.getReservation().getConcert().getConcertName());
-        context.setVariable("concertDate", ticket.getReservation().getConcert().getDate());
-        context.setVariable("qrString", qrString);
-        context.setVariable("serial", ticket.getTicketId());
-        return templateEngine.process("ticketTemplate", context);
+        TEMPLATES.forEach(template -> templateEngine.process(template, context));
+        log.info("Precompiled {} mail templates", TEMPLATES.size());
     }
 
-    String buildCancellationEMail(Ticket ticket){
+    public String buildTicketMail(Ticket ticket, String qrString){
+        return templateEngine.process("ticketTemplate", ticketContext(ticket, qrString));
+    }
+
+    public String buildCancellationEMail(TicketMailDto ticket){
 
         Context context = new Context();
-        context.setVariable("logo", pngDataB64);
-        context.setVariable("concert", ticket.getReservation().getConcert().getConcertName());
-        context.setVariable("concertDate", ticket.getReservation().getConcert().getDate());
-        context.setVariable("venueName", ticket.getReservation().getConcert().getVenue().getVenueName());
-        context.setVariable("venuePhone", ticket.getReservation().getConcert().getVenue().getPhone());
+        context.setVariable("concert", ticket.getConcertName());
+        context.setVariable("concertDate", ticket.getConcertDate());
+        context.setVariable("venueName", ticket.getVenueName());
+        context.setVariable("venuePhone", ticket.getVenuePhone());
         return templateEngine.process("cancelConcertTemplate", context);
     }
 
-    String buildActivationMail(String url){
+    public String buildActivationMail(String url){
         Context context = new Context();
         context.setVariable("url", url);
-        context.setVariable("logo", pngDataB64);
         return templateEngine.process("activationTemplate", context);
     }
 
-    String buildRescheduleMail(Ticket ticket, String qrString){
+    public String buildRescheduleMail(TicketMailDto ticket, String qrString){
+        Context context = new Context();
+        context.setVariable("name", ticket.getTicketHolder());
+        context.setVariable("email", ticket.getTicketHolderEmail());
+        context.setVariable("price", ticket.getPrice());
+        context.setVariable("purchaseDate", ticket.getPurchaseDate());
+        context.setVariable("phone", ticket.getPhone());
+        context.setVariable("concert", ticket.getConcertName());
+        context.setVariable("concertDate", ticket.getConcertDate());
+        context.setVariable("qrString", qrString);
+        context.setVariable("serial", ticket.getTicketId());
+        return templateEngine.process("rescheduleConcertTemplate", context);
+    }
+
+    //Every template references the logo, the multipart helper must be created with multipart=true
+    public void addLogo(MimeMessageHelper messageHelper) throws MessagingException {
+        messageHelper.addInline(LOGO_CID, logo, "image/png");
+    }
 
+    private Context ticketContext(Ticket ticket, String qrString){
         Context context = new Context();
-        context.setVariable("logo", pngDataB64);
         context.setVariable("name", ticket.getTicketHolder());
         context.setVariable("email", ticket.getTicketHolderEmail());
         context.setVariable("price", ticket.getPrice());
@@ -80,23 +96,15 @@ public class MailContentBuilder {
         context.setVariable("concertDate", ticket.getReservation().getConcert().getDate());
         context.setVariable("qrString", qrString);
         context.setVariable("serial", ticket.getTicketId());
-        return templateEngine.process("rescheduleConcertTemplate", context);
+        return context;
     }
 
-    private String pngToBase64Converter(){
-        String pngDataB64 = null;
-        Resource resource = resourceLoader.getResource("classpath:templates/logo.png");
-        try {
-            BufferedImage bufferedImage = ImageIO
-//                    .read(ResourceUtils.getFile("classpath:templates/logo.png"));
-                    .read(resource.getInputStream());
-            ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
-            ImageIO.write(bufferedImage, "PNG", pngOutputStream);
-            byte[] pngData = pngOutputStream.toByteArray();
-            pngDataB64 = Base64Utils.encodeToString(pngData);
+    //Read once, the PNG bytes are shared by every outgoing mail
+    private Resource loadLogo(ResourceLoader resourceLoader){
+        try (InputStream inputStream = resourceLoader.getResource("classpath:templates/logo.png").getInputStream()) {
+            return new ByteArrayResource(StreamUtils.copyToByteArray(inputStream), "mail logo");
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new ApplicationException("Exception occurred! Failed to load the mail logo", e);
         }
-        return pngDataB64;
     }
 }
@@ -5,7 +5,7 @@ import com.google.zxing.WriterException;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
-import com.unipi.giguniverse.model.Ticket;
+import com.unipi.giguniverse.dto.TicketMailDto;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Base64Utils;
 
@@ -45,9 +45,9 @@ public class QRGeneratorService {
         return pngDataB64;
     }
 
-    public String generateQRCodeImageToString(Ticket ticket){
+    public String generateQRCodeImageToString(TicketMailDto ticket){
         String qrText = ticket.getTicketId() + "\n" +
-                ticket.getReservation().getConcert().getConcertName() + "\n" +
+                ticket.getConcertName() + "\n" +
                 ticket.getTicketHolder() + "\n" +
                 ticket.getTicketHolderEmail() + "\n" +
                 ticket.getPurchaseDate();
@@ -1,6 +1,7 @@
 package com.unipi.giguniverse.service;
 
 import com.unipi.giguniverse.dto.ReservationDto;
+import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.Owner;
 import com.unipi.giguniverse.model.Reservation;
 import com.unipi.giguniverse.model.User;
@@ -11,7 +12,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static java.util.stream.Collectors.toList;
@@ -90,6 +93,42 @@ public class ReservationService {
         return mapReservationToDto(existingReservation);
     }
 
+    // Reserves all tickets of an order in a single atomic statement, no read-modify-write race
+    public ReservationDto reserveTickets(Integer concertId, Integer quantity){
+        if(quantity == null || quantity < 1){
+            throw new ApplicationException("Invalid number of tickets");
+        }
+        int reservationId = getReservationIdByConcertId(concertId);
+        if(reservationRepository.decrementTicketNumber(reservationId, quantity) == 0){
+            throw new ApplicationException("Not enough tickets available");
+        }
+        return mapReservationToDto(reservationRepository.getOne(reservationId));
+    }
+
+    // Gives back tickets of an order that could not be completed
+    public ReservationDto releaseTickets(Integer concertId, Integer quantity){
+        if(quantity == null || quantity < 1){
+            throw new ApplicationException("Invalid number of tickets");
+        }
+        int reservationId = getReservationIdByConcertId(concertId);
+        reservationRepository.incrementTicketNumber(reservationId, quantity);
+        return mapReservationToDto(reservationRepository.getOne(reservationId));
+    }
+
+    // Ticket numbers only, for callers that cache the rest of the concert
+    public Map<Integer, Integer> getAvailability(List<Integer> concertIds){
+        Map<Integer, Integer> availability = new LinkedHashMap<>();
+        reservationRepository.findAvailabilityByConcertIds(concertIds)
+                .forEach(concert -> availability.put(concert.getConcertId(), concert.getTicketNumber()));
+        return availability;
+    }
+
+    private int getReservationIdByConcertId(Integer concertId){
+        return reservationRepository.findByConcert_ConcertId(concertId)
+                .orElseThrow(()->new ApplicationException("Reservation not found"))
+                .getReservationId();
+    }
+
     public String deleteReservation(Integer reservationId){
         reservationRepository.deleteById(reservationId);
         return "Reservation with id:"+ reservationId.toString() + " was deleted.";
@@ -0,0 +1,136 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.client.VenueClient;
+import com.unipi.giguniverse.dto.ConcertDto;
+import com.unipi.giguniverse.model.Concert;
+import com.unipi.giguniverse.model.Owner;
+import com.unipi.giguniverse.model.Reservation;
+import com.unipi.giguniverse.model.Venue;
+import com.unipi.giguniverse.service.ConcertNotificationService;
+import com.unipi.giguniverse.service.ConcertService;
+import com.unipi.giguniverse.service.ImageStoreService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ConcertRepositoryTests {
+
+    private static final int CONCERTS = 5;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private ConcertRepository concertRepository;
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    private ConcertService concertService;
+    private Statistics statistics;
+    private Owner owner;
+    private Venue venue;
+
+    @BeforeEach
+    void setUp(){
+        concertService = new ConcertService(concertRepository, reservationRepository,
+                mock(TicketRepository.class), mock(TicketRevocationRepository.class),
+                mock(TicketQRCodeRepository.class),
+                mock(ConcertNotificationService.class),
+                mock(ImageStoreService.class), mock(VenueClient.class));
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        owner = entityManager.persist(Owner.builder()
+                .firstname("Owner")
+                .lastname("Test")
+                .email("owner@giguniverse.com")
+                .password("password")
+                .created(Instant.now())
+                .isEnabled(true)
+                .build());
+        venue = entityManager.persist(Venue.builder()
+                .venueName("Test Venue")
+                .owner(owner)
+                .city("Piraeus")
+                .capacity(1000)
+                .build());
+        for(int i = 0; i < CONCERTS; i++){
+            Reservation reservation = entityManager.persist(Reservation.builder()
+                    .owner(owner)
+                    .ticketPrice(20 + i)
+                    .ticketNumber(100 + i)
+                    .build());
+            Concert concert = entityManager.persist(Concert.builder()
+                    .concertName("Concert " + i)
+                    .venue(venue)
+                    .date(new Date())
+                    .reservation(reservation)
+                    .build());
+            reservation.setConcert(concert);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void getAllConcertsRunsSingleStatement(){
+        List<ConcertDto> concerts = concertService.getAllConcerts(null, null);
+
+        assertEquals(CONCERTS, concerts.size());
+        assertEquals("Test Venue", concerts.get(0).getVenue().getVenueName());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void getConcertByDateRunsSingleStatement(){
+        List<ConcertDto> concerts = concertService.getConcertByDate(LocalDate.now());
+
+        assertEquals(CONCERTS, concerts.size());
+        assertEquals("Test Venue", concerts.get(0).getVenue().getVenueName());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void getConcertByMonthRunsSingleStatement(){
+        List<ConcertDto> concerts = concertService.getConcertByMonth(LocalDate.now());
+
+        assertEquals(CONCERTS, concerts.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void getConcertByDateLeavesOutOtherDays(){
+        assertEquals(0, concertService.getConcertByDate(LocalDate.now().plusDays(1)).size());
+        assertEquals(0, concertService.getConcertByMonth(LocalDate.now().plusMonths(1)).size());
+    }
+
+    @Test
+    void getConcertByVenueRunsSingleStatement(){
+        List<ConcertDto> concerts = concertService.getConcertByVenue(venue);
+
+        assertEquals(CONCERTS, concerts.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void getConcertByLoggedInOwnerRunsSingleStatement(){
+        List<ConcertDto> concerts = concertService.getConcertByLoggedInOwner(owner.getUserId());
+
+        assertEquals(CONCERTS, concerts.size());
+        concerts.forEach(concert -> assertEquals(venue.getVenueId(), concert.getVenueId()));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
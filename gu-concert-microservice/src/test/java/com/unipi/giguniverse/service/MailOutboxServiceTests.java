@@ -0,0 +1,92 @@
+package com.unipi.giguniverse.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.unipi.giguniverse.model.OutboxMail;
+import com.unipi.giguniverse.repository.OutboxMailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.thymeleaf.TemplateEngine;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+class MailOutboxServiceTests {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private OutboxMailRepository outboxMailRepository;
+
+    private MailOutboxService mailOutboxService(int port){
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+        return new MailOutboxService(outboxMailRepository, mailSender,
+                new MailContentBuilder(new TemplateEngine(), new DefaultResourceLoader()), new SimpleMeterRegistry(), 10, 3, 30);
+    }
+
+    @Test
+    void dispatchSendsDueMailsInBatches(){
+        MailOutboxService mailOutboxService = mailOutboxService(ServerSetupTest.SMTP.getPort());
+        for(int i = 0; i < 15; i++){
+            mailOutboxService.enqueue("holder" + i + "@giguniverse.com", "Ticket " + i, "<p>Ticket " + i + "</p>");
+        }
+
+        assertEquals(10, mailOutboxService.dispatchBatch());
+        assertEquals(5, mailOutboxService.dispatchBatch());
+        assertEquals(0, mailOutboxService.dispatchBatch());
+
+        assertEquals(15, greenMail.getReceivedMessages().length);
+        //Logo travels as an inline part referenced by cid:logo
+        assertTrue(GreenMailUtil.getWholeMessage(greenMail.getReceivedMessages()[0]).contains("Content-ID: <logo>"));
+        List<OutboxMail> mails = outboxMailRepository.findAll();
+        assertTrue(mails.stream().allMatch(mail -> mail.getStatus() == OutboxMail.Status.SENT));
+        assertTrue(mails.stream().allMatch(mail -> mail.getBody() == null));
+    }
+
+    @Test
+    void failedDeliveryIsRetriedWithBackoff(){
+        //Nothing listens on port 1, the connection is refused
+        MailOutboxService mailOutboxService = mailOutboxService(1);
+        mailOutboxService.enqueue("holder@giguniverse.com", "Ticket", "<p>Ticket</p>");
+
+        assertEquals(1, mailOutboxService.dispatchBatch());
+
+        OutboxMail mail = outboxMailRepository.findAll().get(0);
+        assertEquals(OutboxMail.Status.PENDING, mail.getStatus());
+        assertEquals(1, mail.getAttempts());
+        assertTrue(mail.getNextAttempt().isAfter(Instant.now()));
+        assertNull(mail.getSent());
+        //Not due again until the backoff has passed
+        assertEquals(0, mailOutboxService.dispatchBatch());
+    }
+
+    @Test
+    void mailIsGivenUpAfterMaxAttempts(){
+        MailOutboxService mailOutboxService = mailOutboxService(1);
+        mailOutboxService.enqueue("holder@giguniverse.com", "Ticket", "<p>Ticket</p>");
+
+        for(int attempt = 0; attempt < 3; attempt++){
+            OutboxMail mail = outboxMailRepository.findAll().get(0);
+            mail.setNextAttempt(Instant.now().minusSeconds(1));
+            assertEquals(1, mailOutboxService.dispatchBatch());
+        }
+
+        OutboxMail mail = outboxMailRepository.findAll().get(0);
+        assertEquals(OutboxMail.Status.FAILED, mail.getStatus());
+        assertEquals(3, mail.getAttempts());
+    }
+}
@@ -0,0 +1,62 @@
+package com.unipi.giguniverse.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ Collapses concurrent identical blocking lookups into one downstream call, waiters block on the caller's result.
+ Only for idempotent reads, the key is dropped as soon as the call completes so nothing is cached.
+ Counted as singleflight.calls{result=issued|collapsed}.
+ */
+@Component
+public class SingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter issued;
+    private final Counter collapsed;
+
+    public SingleFlight(MeterRegistry meterRegistry){
+        this.issued = meterRegistry.counter("singleflight.calls", "result", "issued");
+        this.collapsed = meterRegistry.counter("singleflight.calls", "result", "collapsed");
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call){
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if(existing != null){
+            collapsed.increment();
+            try {
+                return (T) existing.join();
+            }
+            catch (CompletionException e){
+                //Same failure as the issuing caller
+                if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                if(e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw e;
+            }
+        }
+
+        issued.increment();
+        try {
+            T result = call.get();
+            flight.complete(result);
+            return result;
+        }
+        catch (Throwable e){
+            //Errors and sneaky thrown checked exceptions too, or the waiters would block forever
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, flight);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.unipi.giguniverse.config;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ executor.mode=virtual handles requests on virtual threads (Java 21, see the java21 maven profile).
+ A purchase waits on the reservation call to the concert service before its inserts, with virtual
+ threads that wait no longer holds one of the Tomcat workers.
+ */
+@Configuration
+@ConditionalOnProperty(name = "executor.mode", havingValue = "virtual")
+@Slf4j
+public class ExecutorConfig {
+
+    private final ExecutorService requestExecutor = newVirtualThreadExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(){
+        log.info("Handling ticket requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        requestExecutor.shutdown();
+    }
+
+    // Looked up reflectively so the service still builds with java.version 11, also used by ExecutionModeBenchmark
+    public static ExecutorService newVirtualThreadExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ApplicationException("executor.mode=virtual requires Java 21 or newer", e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.unipi.giguniverse.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JpaConfig {
+
+    private static final int JDBC_BATCH_SIZE = 50;
+
+    // Lets saveAll() send the tickets of an order as JDBC batches, explicit properties still win
+    @Bean
+    public HibernatePropertiesCustomizer batchInsertsCustomizer(){
+        return hibernateProperties -> {
+            hibernateProperties.putIfAbsent("hibernate.jdbc.batch_size", JDBC_BATCH_SIZE);
+            hibernateProperties.putIfAbsent("hibernate.order_inserts", true);
+        };
+    }
+
+    // Connector/J ignores the fetch size hint of the export stream unless cursor fetch is enabled,
+    // without it the whole attendee list is read into memory. A value set in the url still wins
+    @Bean
+    public static BeanPostProcessor mysqlCursorFetchPostProcessor(){
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName){
+                if(bean instanceof HikariDataSource){
+                    HikariDataSource dataSource = (HikariDataSource) bean;
+                    String url = dataSource.getJdbcUrl();
+                    if(url != null && url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch")){
+                        dataSource.addDataSourceProperty("useCursorFetch", "true");
+                    }
+                }
+                return bean;
+            }
+        };
+    }
+}
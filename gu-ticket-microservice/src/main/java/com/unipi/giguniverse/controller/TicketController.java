@@ -1,19 +1,30 @@
 package com.unipi.giguniverse.controller;
 
 import com.unipi.giguniverse.dto.TicketDto;
+import com.unipi.giguniverse.dto.TicketScanDto;
 import com.unipi.giguniverse.model.Attendant;
 import com.unipi.giguniverse.model.Ticket;
+import com.unipi.giguniverse.model.TicketQRCode;
+import com.unipi.giguniverse.security.JwtVerificationFilter;
+import com.unipi.giguniverse.service.TicketExportService;
+import com.unipi.giguniverse.service.TicketManifestService;
 import com.unipi.giguniverse.service.TicketService;
+import com.unipi.giguniverse.service.TicketTokenProvider;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.transaction.Transactional;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @Slf4j
@@ -22,6 +33,9 @@ import java.util.UUID;
 public class TicketController {
 
     private final TicketService ticketService;
+    private final TicketManifestService ticketManifestService;
+    private final TicketTokenProvider ticketTokenProvider;
+    private final TicketExportService ticketExportService;
 
 //    @PostMapping
 //    public ResponseEntity<TicketDto> addTicket(@RequestBody TicketDto ticketDto){
@@ -46,10 +60,12 @@ public class TicketController {
     }
 
     @GetMapping
-    public ResponseEntity<List<TicketDto>> getAllTickets(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.getAllTickets());
+    public ResponseEntity<List<TicketDto>> getAllTickets(@RequestParam(required = false) String after,
+                                                         @RequestParam(required = false) Integer limit){
+        //Always a page, DEFAULT_PAGE_SIZE rows when no limit is given, a full page links to the next one
+        List<TicketDto> tickets = ticketService.getAllTickets(after, limit);
+        return NextPageLink.page(NextPageLink.currentRequest(), tickets, TicketService.pageSize(limit),
+                TicketDto::getTicketId);
     }
 
     @GetMapping("/{id}")
@@ -59,6 +75,25 @@ public class TicketController {
                 .body(ticketService.getTicketById(id));
     }
 
+    @GetMapping(value = "/{id}/qr.png", produces = MediaType.IMAGE_PNG_VALUE)
+    public ResponseEntity<byte[]> getTicketQRCode(@PathVariable String id){
+        TicketQRCode qrCode = ticketService.getTicketQRCode(id);
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .eTag(qrCode.getContentHash())
+                .cacheControl(CacheControl.maxAge(1, TimeUnit.DAYS).cachePrivate())
+                .contentType(MediaType.IMAGE_PNG)
+                .body(qrCode.getImage());
+    }
+
+    //Signed QR codes of several tickets, used by Concert Microservice for the reschedule mails
+    @PostMapping("/qrcodes")
+    public ResponseEntity<Map<String, String>> getTicketQRCodes(@RequestBody List<String> ids){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(ticketService.getTicketQRCodes(ids));
+    }
+
     // Monolithic Implementation
 //    @GetMapping("/loggedin")
 //    public ResponseEntity<List<TicketDto>> getTicketsByLoggedInUser(){
@@ -68,18 +103,33 @@ public class TicketController {
 //    }
 
     // Microservices Implementation
-    @GetMapping("/loggedin/{userId}")
-    public ResponseEntity<List<TicketDto>> getTicketsByLoggedInUser(@PathVariable Integer userId){
+    //Caller from the verified JWT, see JwtVerificationFilter
+    @GetMapping("/loggedin")
+    public ResponseEntity<List<TicketDto>> getTicketsOfCaller(
+            @RequestAttribute(name = JwtVerificationFilter.USER_ID, required = false) Integer userId){
+        if(userId == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         return ResponseEntity
                 .status(HttpStatus.OK)
                 .body(ticketService.getTicketsByLoggedInUser(userId));
     }
 
     @GetMapping("/concert/{id}")
-    public ResponseEntity<List<TicketDto>> getTicketsByConcertID(@PathVariable Integer id){
+    public ResponseEntity<List<TicketDto>> getTicketsByConcertID(@PathVariable Integer id,
+                                                                 @RequestParam(required = false) String after,
+                                                                 @RequestParam(required = false) Integer limit){
+        //Always a page linking to the next one, the full attendee list is streamed by /concert/{id}/export
+        List<TicketDto> tickets = ticketService.getTicketsByConcertID(id, after, limit);
+        return NextPageLink.page(NextPageLink.currentRequest(), tickets, TicketService.pageSize(limit),
+                TicketDto::getTicketId);
+    }
+
+    //Attendee list written line by line as tickets are read, without QR images
+    @GetMapping(value = "/concert/{id}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportTicketsByConcertID(@PathVariable Integer id){
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .body(ticketService.getTicketsByConcertID(id));
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> ticketExportService.exportConcertTickets(id, out));
     }
 
     @GetMapping("/validate/{uuid}")
@@ -89,6 +139,33 @@ public class TicketController {
                 .body(ticketService.validateTicket(uuid));
     }
 
+    @PostMapping("/scan/{uuid}")
+    public ResponseEntity<TicketScanDto> scan(@PathVariable String uuid,
+                                              @RequestParam(required = false) Integer concertId){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(ticketService.scanTicket(uuid, concertId));
+    }
+
+    @GetMapping(value = "/manifest/{concertId}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getManifest(@PathVariable Integer concertId,
+                                              @RequestParam(defaultValue = "0") long since){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(ticketManifestService.getManifest(concertId, since, System.currentTimeMillis()));
+    }
+
+    //X.509 encoded public key for offline verification of ticket tokens
+    @GetMapping(value = "/manifest/key", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getManifestKey(){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header("X-Key-Id", ticketTokenProvider.getKeyId())
+                .body(ticketTokenProvider.getPublicKey().getEncoded());
+    }
+
     @GetMapping("/ticketHolderEmail/{ticketHolderEmail}")
     public ResponseEntity<List<TicketDto>> getTicketByEmail(@PathVariable String ticketHolderEmail){
         return ResponseEntity
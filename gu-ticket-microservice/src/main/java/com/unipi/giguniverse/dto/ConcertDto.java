@@ -29,4 +29,5 @@ public class ConcertDto {
     @NotBlank(message = "Number of Tickets Required")
     private Integer ticketNumber;
     private String image;
+    private String imageUrl;
 }
\ No newline at end of file
@@ -34,5 +34,7 @@ public class Concert {
     private Reservation reservation;
     @Lob
     private String image;
+    //Image store key, set by the concert service
+    private String imageHash;
 
 }
@@ -32,6 +32,8 @@ public class Ticket {
     @OneToOne (fetch =LAZY)
     private User ticketBuyer;
     private String phone;
+    //Set once at the venue gate, a second scan is rejected
+    private Date checkInDate;
 }
 
 enum TicketType{
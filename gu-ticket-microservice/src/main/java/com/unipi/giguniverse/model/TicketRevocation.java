@@ -0,0 +1,23 @@
+package com.unipi.giguniverse.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Date;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Builder
+public class TicketRevocation {
+
+    @Id
+    private String ticketId;
+    private Integer concertId;
+    private Date revokedDate;
+}
@@ -0,0 +1,21 @@
+package com.unipi.giguniverse.repository;
+
+import java.util.Date;
+
+//Attendee export projection, plain columns only so rows are not kept in the persistence context
+public interface TicketExportView {
+
+    String getTicketId();
+
+    String getTicketHolder();
+
+    String getTicketHolderEmail();
+
+    String getPhone();
+
+    double getPrice();
+
+    Date getPurchaseDate();
+
+    Date getCheckInDate();
+}
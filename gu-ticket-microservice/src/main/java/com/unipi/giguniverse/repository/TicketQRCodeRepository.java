@@ -0,0 +1,7 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.TicketQRCode;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface TicketQRCodeRepository extends JpaRepository<TicketQRCode, String> {
+}
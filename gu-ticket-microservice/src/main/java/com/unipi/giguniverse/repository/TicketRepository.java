@@ -1,9 +1,19 @@
 package com.unipi.giguniverse.repository;
 
 import com.unipi.giguniverse.model.Ticket;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 
 public interface TicketRepository extends JpaRepository<Ticket, String> {
@@ -12,11 +22,38 @@ public interface TicketRepository extends JpaRepository<Ticket, String> {
 
     List<Ticket> findByReservationConcertConcertId(Integer concertId);
 
+    List<Ticket> findByTicketIdGreaterThanOrderByTicketIdAsc(String ticketId, Pageable pageable);
+
+    List<Ticket> findByReservationConcertConcertIdAndTicketIdGreaterThanOrderByTicketIdAsc(Integer concertId, String ticketId,
+                                                                                        Pageable pageable);
+
     List<Ticket> findByTicketBuyerUserId(Integer concertId);
 
     List<Ticket> findByReservationReservationId(Integer reservationId);
 
     List<Ticket> deleteByReservationReservationId(Integer reservationId);
 
+    @Query("select t.ticketId from Ticket t where t.reservation.concert.concertId = :concertId")
+    List<String> findTicketIdsByConcertId(@Param("concertId") Integer concertId);
+
+    @Query("select t.ticketId from Ticket t where t.reservation.concert.concertId = :concertId and t.purchaseDate > :since")
+    List<String> findTicketIdsByConcertIdSince(@Param("concertId") Integer concertId, @Param("since") Date since);
+
+    //Export cursor, the driver hands rows over in batches of the fetch size (cursor fetch is enabled in JpaConfig)
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("select t.ticketId as ticketId, t.ticketHolder as ticketHolder, t.ticketHolderEmail as ticketHolderEmail, " +
+            "t.phone as phone, t.price as price, t.purchaseDate as purchaseDate, t.checkInDate as checkInDate " +
+            "from Ticket t where t.reservation.concert.concertId = :concertId order by t.ticketId")
+    Stream<TicketExportView> streamExportByConcertId(@Param("concertId") Integer concertId);
+
+    @Query("select t.ticketId as ticketId, c.concertId as concertId, t.ticketHolder as ticketHolder, " +
+            "t.checkInDate as checkInDate from Ticket t join t.reservation r join r.concert c where t.ticketId = :ticketId")
+    Optional<TicketScanView> findScanViewByTicketId(@Param("ticketId") String ticketId);
+
+    //Only the first scan updates a row, concurrent scans of the same ticket cannot both succeed
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Ticket t set t.checkInDate = :checkInDate where t.ticketId = :ticketId and t.checkInDate is null")
+    int checkIn(@Param("ticketId") String ticketId, @Param("checkInDate") Date checkInDate);
+
 //    List<Ticket> findByAttendant(Attendant ticketBuyer);
 }
@@ -0,0 +1,14 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.TicketRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Date;
+import java.util.List;
+
+public interface TicketRevocationRepository extends JpaRepository<TicketRevocation, String> {
+
+    List<TicketRevocation> findByConcertId(Integer concertId);
+
+    List<TicketRevocation> findByConcertIdAndRevokedDateAfter(Integer concertId, Date since);
+}
@@ -0,0 +1,15 @@
+package com.unipi.giguniverse.repository;
+
+import java.util.Date;
+
+//Gate scan projection, just the columns needed to admit a ticket holder
+public interface TicketScanView {
+
+    String getTicketId();
+
+    Integer getConcertId();
+
+    String getTicketHolder();
+
+    Date getCheckInDate();
+}
@@ -0,0 +1,177 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.model.OutboxMail;
+import com.unipi.giguniverse.repository.OutboxMailRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import javax.transaction.Transactional;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ Persistent mail outbox. Mails are rendered and written in the transaction of the change that
+ caused them, so a rolled back purchase or cancellation sends nothing and a crash loses nothing.
+ MailDispatcher drains due rows in batches over one SMTP connection, failures are retried with
+ exponential backoff and given up after max-attempts.
+ Metrics: mail.outbox.sent, mail.outbox.failed{final}, mail.outbox.batch (send time per batch)
+ and mail.outbox.latency (enqueue to delivery).
+ */
+@Service
+@Slf4j
+@Transactional
+public class MailOutboxService {
+
+    private static final String FROM = "giguniverse@email.com";
+
+    private final OutboxMailRepository outboxMailRepository;
+    private final JavaMailSender mailSender;
+    private final MailContentBuilder mailContentBuilder;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final Counter sentCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+    private final Timer latencyTimer;
+
+    public MailOutboxService(OutboxMailRepository outboxMailRepository,
+                             JavaMailSender mailSender,
+                             MailContentBuilder mailContentBuilder,
+                             MeterRegistry meterRegistry,
+                             @Value("${mail.outbox.batch-size:50}") int batchSize,
+                             @Value("${mail.outbox.max-attempts:8}") int maxAttempts,
+                             @Value("${mail.outbox.backoff-seconds:30}") long backoffSeconds){
+        this.outboxMailRepository = outboxMailRepository;
+        this.mailSender = mailSender;
+        this.mailContentBuilder = mailContentBuilder;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoff = Duration.ofSeconds(backoffSeconds);
+        this.sentCounter = meterRegistry.counter("mail.outbox.sent");
+        this.retryCounter = meterRegistry.counter("mail.outbox.failed", "final", "false");
+        this.failedCounter = meterRegistry.counter("mail.outbox.failed", "final", "true");
+        this.batchTimer = meterRegistry.timer("mail.outbox.batch");
+        this.latencyTimer = meterRegistry.timer("mail.outbox.latency");
+    }
+
+    public void enqueue(String recipient, String subject, String body){
+        Instant now = Instant.now();
+        outboxMailRepository.save(OutboxMail.builder()
+                .recipient(recipient)
+                .subject(subject)
+                .body(body)
+                .status(OutboxMail.Status.PENDING)
+                .created(now)
+                .nextAttempt(now)
+                .build());
+    }
+
+    //Sends one batch of due mails, returns how many rows were taken
+    public int dispatchBatch(){
+        Instant now = Instant.now();
+        List<OutboxMail> mails = outboxMailRepository.findByStatusAndNextAttemptLessThanEqualOrderByMailIdAsc(
+                OutboxMail.Status.PENDING, now, PageRequest.of(0, batchSize));
+        if(mails.isEmpty()) return 0;
+
+        Map<MimeMessage, OutboxMail> messages = new IdentityHashMap<>();
+        for(OutboxMail mail : mails){
+            try {
+                messages.put(toMimeMessage(mail), mail);
+            }
+            catch (MessagingException e){
+                markFailed(mail, e, now);
+            }
+        }
+
+        if(messages.isEmpty()) return mails.size();
+        Map<Object, Exception> failures = Map.of();
+        long start = System.nanoTime();
+        try {
+            //JavaMailSenderImpl sends the whole array over a single connection
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+        }
+        catch (MailSendException e){
+            failures = e.getFailedMessages();
+            //Connection or authentication failure, nothing was delivered
+            if(failures.isEmpty()) failures = allFailed(messages, e);
+        }
+        catch (MailException e){
+            failures = allFailed(messages, e);
+        }
+        batchTimer.record(Duration.ofNanos(System.nanoTime() - start));
+
+        Instant sent = Instant.now();
+        for(Map.Entry<MimeMessage, OutboxMail> entry : messages.entrySet()){
+            OutboxMail mail = entry.getValue();
+            Exception failure = failures.get(entry.getKey());
+            if(failure != null){
+                markFailed(mail, failure, now);
+                continue;
+            }
+            mail.setStatus(OutboxMail.Status.SENT);
+            mail.setSent(sent);
+            mail.setBody(null);
+            sentCounter.increment();
+            latencyTimer.record(Duration.between(mail.getCreated(), sent));
+        }
+        return mails.size();
+    }
+
+    public int getBatchSize(){
+        return batchSize;
+    }
+
+    private MimeMessage toMimeMessage(OutboxMail mail) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage, true, StandardCharsets.UTF_8.name());
+        messageHelper.setFrom(FROM);
+        messageHelper.setTo(mail.getRecipient());
+        messageHelper.setSubject(mail.getSubject());
+        messageHelper.setText(mail.getBody(), true);
+        mailContentBuilder.addLogo(messageHelper);
+        return mimeMessage;
+    }
+
+    private Map<Object, Exception> allFailed(Map<MimeMessage, OutboxMail> messages, Exception e){
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        messages.keySet().forEach(message -> failures.put(message, e));
+        return failures;
+    }
+
+    private void markFailed(OutboxMail mail, Exception e, Instant now){
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        String error = String.valueOf(e.getMessage());
+        mail.setLastError(error.length() > 1000 ? error.substring(0, 1000) : error);
+        if(attempts >= maxAttempts){
+            mail.setStatus(OutboxMail.Status.FAILED);
+            failedCounter.increment();
+            log.error("Giving up on mail {} to {} after {} attempts: {}", mail.getMailId(), mail.getRecipient(),
+                    attempts, error);
+            return;
+        }
+        //30s, 1m, 2m, ... capped at 1h
+        Duration delay = backoff.multipliedBy(1L << Math.min(attempts - 1, 7));
+        mail.setNextAttempt(now.plus(delay.compareTo(Duration.ofHours(1)) > 0 ? Duration.ofHours(1) : delay));
+        retryCounter.increment();
+        log.warn("Mail {} to {} failed, retry {} of {}: {}", mail.getMailId(), mail.getRecipient(), attempts,
+                maxAttempts, error);
+    }
+}
@@ -0,0 +1,124 @@
+package com.unipi.giguniverse.service;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ Writes a BitMatrix straight to a 1-bit grayscale PNG, without going through BufferedImage and ImageIO.
+ Scratch buffers, Deflater and CRC are kept per thread, only the returned PNG is allocated per call.
+ */
+public final class QRCodePngEncoder {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+    //Chunk length + type + crc
+    private static final int CHUNK_OVERHEAD = 12;
+    private static final int IHDR_LENGTH = 13;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private QRCodePngEncoder(){
+    }
+
+    public static byte[] encode(BitMatrix bitMatrix){
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+        int rowBytes = (width + 7) >>> 3;
+        int rawLength = height * (rowBytes + 1);
+
+        Scratch scratch = SCRATCH.get();
+        byte[] raw = scratch.raw(rawLength);
+
+        //Each scanline is a filter byte (0, none) followed by 8 pixels per byte, MSB first, 1 is white
+        int pos = 0;
+        for(int y = 0; y < height; y++){
+            raw[pos++] = 0;
+            for(int x = 0; x < width; x += 8){
+                int packed = 0;
+                for(int bit = 0; bit < 8; bit++){
+                    int px = x + bit;
+                    packed <<= 1;
+                    if(px >= width || !bitMatrix.get(px, y)) packed |= 1;
+                }
+                raw[pos++] = (byte) packed;
+            }
+        }
+
+        int compressedLength = scratch.deflate(rawLength);
+
+        byte[] png = new byte[PNG_SIGNATURE.length
+                + CHUNK_OVERHEAD + IHDR_LENGTH
+                + CHUNK_OVERHEAD + compressedLength
+                + CHUNK_OVERHEAD];
+        System.arraycopy(PNG_SIGNATURE, 0, png, 0, PNG_SIGNATURE.length);
+        pos = PNG_SIGNATURE.length;
+
+        //Width, height, bit depth 1, color type 0 (grayscale), compression, filter, interlace
+        byte[] header = scratch.header;
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 1;
+        header[9] = 0;
+        header[10] = 0;
+        header[11] = 0;
+        header[12] = 0;
+        pos = writeChunk(png, pos, IHDR, header, IHDR_LENGTH, scratch.crc);
+        pos = writeChunk(png, pos, IDAT, scratch.compressed, compressedLength, scratch.crc);
+        writeChunk(png, pos, IEND, header, 0, scratch.crc);
+        return png;
+    }
+
+    private static int writeChunk(byte[] png, int pos, byte[] type, byte[] data, int length, CRC32 crc){
+        putInt(png, pos, length);
+        System.arraycopy(type, 0, png, pos + 4, 4);
+        System.arraycopy(data, 0, png, pos + 8, length);
+        crc.reset();
+        crc.update(png, pos + 4, length + 4);
+        putInt(png, pos + 8 + length, (int) crc.getValue());
+        return pos + CHUNK_OVERHEAD + length;
+    }
+
+    private static void putInt(byte[] buffer, int pos, int value){
+        buffer[pos] = (byte) (value >>> 24);
+        buffer[pos + 1] = (byte) (value >>> 16);
+        buffer[pos + 2] = (byte) (value >>> 8);
+        buffer[pos + 3] = (byte) value;
+    }
+
+    private static final class Scratch {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final CRC32 crc = new CRC32();
+        private final byte[] header = new byte[IHDR_LENGTH];
+        private byte[] raw = new byte[0];
+        private byte[] compressed = new byte[0];
+
+        private byte[] raw(int length){
+            if(raw.length < length){
+                raw = new byte[length];
+                //Mostly white QR data compresses well, input size plus zlib overhead is always enough
+                compressed = new byte[length + (length >>> 8) + 64];
+            }
+            return raw;
+        }
+
+        private int deflate(int length){
+            deflater.reset();
+            deflater.setInput(raw, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while(!deflater.finished()){
+                if(compressedLength == compressed.length){
+                    byte[] grown = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, grown, 0, compressedLength);
+                    compressed = grown;
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            return compressedLength;
+        }
+    }
+}
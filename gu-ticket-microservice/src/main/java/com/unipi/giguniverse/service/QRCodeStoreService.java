@@ -0,0 +1,125 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import com.unipi.giguniverse.model.Ticket;
+import com.unipi.giguniverse.model.TicketQRCode;
+import com.unipi.giguniverse.repository.TicketQRCodeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Base64Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ QR images are rendered once per ticket and signing key and persisted, a bounded LRU keeps the hot ones in memory.
+ Reads are keyed by ticket id, the token is only signed when the image has to be rendered.
+ */
+@Service
+@Slf4j
+public class QRCodeStoreService {
+
+    //A signed token needs more modules than the plain text payload, keep them scannable
+    private static final int QR_CODE_SIZE = 250;
+
+    private final TicketQRCodeRepository ticketQRCodeRepository;
+    private final QRGeneratorService qrGeneratorService;
+    private final TicketTokenProvider ticketTokenProvider;
+    private final long maxCacheBytes;
+
+    //Access ordered, eldest entries are evicted first once the byte budget is exceeded
+    private final LinkedHashMap<String, TicketQRCode> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes = 0;
+
+    public QRCodeStoreService(TicketQRCodeRepository ticketQRCodeRepository,
+                              QRGeneratorService qrGeneratorService,
+                              TicketTokenProvider ticketTokenProvider,
+                              @Value("${qrcode.cache.max-bytes:16777216}") long maxCacheBytes){
+        this.ticketQRCodeRepository = ticketQRCodeRepository;
+        this.qrGeneratorService = qrGeneratorService;
+        this.ticketTokenProvider = ticketTokenProvider;
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    public TicketQRCode getQRCode(Ticket ticket){
+        String keyId = ticketTokenProvider.getKeyId();
+        TicketQRCode qrCode = getCached(ticket.getTicketId(), keyId);
+        if(qrCode != null) return qrCode;
+
+        Optional<TicketQRCode> stored = ticketQRCodeRepository.findById(ticket.getTicketId());
+        if(stored.isPresent() && Objects.equals(keyId, stored.get().getKeyId())){
+            qrCode = stored.get();
+        }
+        else {
+            //First request for this ticket or key, sign the token as payload so scanners can verify it offline
+            String qrText = ticketTokenProvider.generateTicketToken(ticket);
+            qrCode = ticketQRCodeRepository.save(TicketQRCode.builder()
+                    .ticketId(ticket.getTicketId())
+                    .contentHash(sha256(qrText))
+                    .keyId(keyId)
+                    .image(qrGeneratorService.getQRCodeImage(qrText, QR_CODE_SIZE, QR_CODE_SIZE))
+                    .created(Instant.now())
+                    .build());
+        }
+        putCached(qrCode);
+        return qrCode;
+    }
+
+    public String getQRCodeAsBase64(Ticket ticket){
+        return Base64Utils.encodeToString(getQRCode(ticket).getImage());
+    }
+
+    public void deleteQRCode(String ticketId){
+        synchronized (cache){
+            TicketQRCode removed = cache.remove(ticketId);
+            if(removed != null) cachedBytes -= removed.getImage().length;
+        }
+        if(ticketQRCodeRepository.existsById(ticketId)){
+            ticketQRCodeRepository.deleteById(ticketId);
+        }
+    }
+
+    private TicketQRCode getCached(String ticketId, String keyId){
+        synchronized (cache){
+            TicketQRCode qrCode = cache.get(ticketId);
+            return qrCode != null && Objects.equals(keyId, qrCode.getKeyId()) ? qrCode : null;
+        }
+    }
+
+    private void putCached(TicketQRCode qrCode){
+        int size = qrCode.getImage().length;
+        if(size > maxCacheBytes) return;
+        synchronized (cache){
+            TicketQRCode previous = cache.put(qrCode.getTicketId(), qrCode);
+            if(previous != null) cachedBytes -= previous.getImage().length;
+            cachedBytes += size;
+            Iterator<Map.Entry<String, TicketQRCode>> eldest = cache.entrySet().iterator();
+            while(cachedBytes > maxCacheBytes && eldest.hasNext()){
+                cachedBytes -= eldest.next().getValue().getImage().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private String sha256(String text){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest){
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e){
+            throw new ApplicationException("Exception occurred while hashing QR code content", e);
+        }
+    }
+}
@@ -9,7 +9,6 @@ import com.unipi.giguniverse.model.Ticket;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Base64Utils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
@@ -29,28 +28,34 @@ public class QRGeneratorService {
         }
     }
 
-    public String getQRCodeImageAsBase64(String text, int width, int height){
+    public byte[] getQRCodeImage(String text, int width, int height){
         QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        String pngDataB64 = null;
+        byte[] pngData = null;
         try {
             BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, width, height);
-            ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
-            MatrixToImageWriter.writeToStream(bitMatrix, "PNG", pngOutputStream);
-            byte[] pngData = pngOutputStream.toByteArray();
-            pngDataB64 = Base64Utils.encodeToString(pngData);
+            //1-bit PNG written directly from the matrix, no BufferedImage/ImageIO round trip
+            pngData = QRCodePngEncoder.encode(bitMatrix);
 
-        } catch (WriterException | IOException e) {
+        } catch (WriterException e) {
             e.printStackTrace();
         }
-        return pngDataB64;
+        return pngData;
     }
 
-    public String generateQRCodeImageToString(Ticket ticket){
-        String qrText = ticket.getTicketId() + "\n" +
+    public String getQRCodeImageAsBase64(String text, int width, int height){
+        byte[] pngData = getQRCodeImage(text, width, height);
+        return pngData != null ? Base64Utils.encodeToString(pngData) : null;
+    }
+
+    public String getQRCodeText(Ticket ticket){
+        return ticket.getTicketId() + "\n" +
                 ticket.getReservation().getConcert().getConcertName() + "\n" +
                 ticket.getTicketHolder() + "\n" +
                 ticket.getTicketHolderEmail() + "\n" +
                 ticket.getPurchaseDate();
-        return getQRCodeImageAsBase64(qrText,150, 150);
+    }
+
+    public String generateQRCodeImageToString(Ticket ticket){
+        return getQRCodeImageAsBase64(getQRCodeText(ticket),150, 150);
     }
 }
@@ -0,0 +1,65 @@
+package com.unipi.giguniverse.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unipi.giguniverse.repository.TicketExportView;
+import com.unipi.giguniverse.repository.TicketRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ Attendee list of a concert as NDJSON, one ticket object per line, without QR images.
+ Rows are read through a database cursor and written as they arrive, memory use does not
+ grow with the number of tickets sold.
+ */
+@Service
+@AllArgsConstructor
+@Transactional
+public class TicketExportService {
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final TicketRepository ticketRepository;
+    private final ObjectMapper objectMapper;
+
+    public void exportConcertTickets(Integer concertId, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        try(Stream<TicketExportView> tickets = ticketRepository.streamExportByConcertId(concertId)){
+            Iterator<TicketExportView> iterator = tickets.iterator();
+            int written = 0;
+            while(iterator.hasNext()){
+                writeTicket(generator, iterator.next());
+                if(++written % FLUSH_EVERY == 0) generator.flush();
+            }
+        }
+        generator.flush();
+    }
+
+    private void writeTicket(JsonGenerator generator, TicketExportView ticket) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("ticketId", ticket.getTicketId());
+        generator.writeStringField("ticketHolder", ticket.getTicketHolder());
+        generator.writeStringField("ticketHolderEmail", ticket.getTicketHolderEmail());
+        generator.writeStringField("phone", ticket.getPhone());
+        generator.writeNumberField("price", ticket.getPrice());
+        generator.writeStringField("purchaseDate", toIsoString(ticket.getPurchaseDate()));
+        generator.writeStringField("checkInDate", toIsoString(ticket.getCheckInDate()));
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    //java.sql.Date does not support toInstant, go through epoch millis
+    private String toIsoString(Date date){
+        return date == null ? null : Instant.ofEpochMilli(date.getTime()).toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.model.TicketRevocation;
+import com.unipi.giguniverse.repository.TicketRepository;
+import com.unipi.giguniverse.repository.TicketRevocationRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ Binary gate manifest of a concert, downloaded by scanners before doors open.
+ Layout (big endian): "GUTM", version, concertId, generatedAt, since,
+ ticket count + sorted 16 byte ticket ids, revocation count + sorted 16 byte ticket ids.
+ Ids are sorted as unsigned bytes so scanners can binary search them, with since > 0
+ only tickets sold and revoked after that epoch millisecond are included.
+ */
+@Service
+@AllArgsConstructor
+@Transactional
+public class TicketManifestService {
+
+    private static final byte[] MAGIC = "GUTM".getBytes(StandardCharsets.US_ASCII);
+    private static final byte VERSION = 1;
+    private static final int UUID_BYTES = 16;
+
+    private final TicketRepository ticketRepository;
+    private final TicketRevocationRepository ticketRevocationRepository;
+
+    public byte[] getManifest(Integer concertId, long since, long generatedAt){
+        List<String> ticketIds;
+        List<String> revokedIds;
+        if(since > 0){
+            Date sinceDate = new Date(since);
+            ticketIds = ticketRepository.findTicketIdsByConcertIdSince(concertId, sinceDate);
+            revokedIds = ticketRevocationRepository.findByConcertIdAndRevokedDateAfter(concertId, sinceDate)
+                    .stream()
+                    .map(TicketRevocation::getTicketId)
+                    .collect(toList());
+        }
+        else {
+            ticketIds = ticketRepository.findTicketIdsByConcertId(concertId);
+            revokedIds = ticketRevocationRepository.findByConcertId(concertId)
+                    .stream()
+                    .map(TicketRevocation::getTicketId)
+                    .collect(toList());
+        }
+
+        long[] tickets = toSortedUuids(ticketIds);
+        long[] revoked = toSortedUuids(revokedIds);
+
+        ByteBuffer manifest = ByteBuffer.allocate(MAGIC.length + 1 + 4 + 8 + 8
+                + 4 + tickets.length * 8
+                + 4 + revoked.length * 8);
+        manifest.put(MAGIC)
+                .put(VERSION)
+                .putInt(concertId)
+                .putLong(generatedAt)
+                .putLong(since);
+        putUuids(manifest, tickets);
+        putUuids(manifest, revoked);
+        return manifest.array();
+    }
+
+    //Most and least significant halves interleaved, ordered as unsigned 128 bit values
+    private long[] toSortedUuids(List<String> ids){
+        UUID[] uuids = ids.stream().map(UUID::fromString).toArray(UUID[]::new);
+        Arrays.sort(uuids, (a, b) -> {
+            int msb = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+            return msb != 0 ? msb : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+        });
+        long[] sorted = new long[uuids.length * 2];
+        for(int i = 0; i < uuids.length; i++){
+            sorted[2 * i] = uuids[i].getMostSignificantBits();
+            sorted[2 * i + 1] = uuids[i].getLeastSignificantBits();
+        }
+        return sorted;
+    }
+
+    private void putUuids(ByteBuffer manifest, long[] uuids){
+        manifest.putInt(uuids.length * 8 / UUID_BYTES);
+        for(long half : uuids){
+            manifest.putLong(half);
+        }
+    }
+}
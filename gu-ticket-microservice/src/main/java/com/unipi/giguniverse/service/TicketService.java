@@ -1,5 +1,7 @@
 package com.unipi.giguniverse.service;
 
+import com.unipi.giguniverse.client.ConcertClient;
+import com.unipi.giguniverse.client.SingleFlight;
 import com.unipi.giguniverse.dto.*;
 import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.*;
@@ -9,15 +11,21 @@ import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import reactor.core.publisher.Mono;
 
 import javax.transaction.Transactional;
 import java.sql.Date;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -37,6 +45,8 @@ public class TicketService {
 
     //Resilience4j Configuration
     public static final String TICKET_MICROSERVICE = "TicketMicroservice";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
 
     private final TicketRepository ticketRepository;
 //    private final ReservationRepository reservationRepository;
@@ -45,11 +55,21 @@ public class TicketService {
 //    private final AuthService authService;
     private final MailService mailService;
     private final QRGeneratorService qrGeneratorService;
+    private final QRCodeStoreService qrCodeStoreService;
+    private final TicketTokenProvider ticketTokenProvider;
+    private final TicketRevocationRepository ticketRevocationRepository;
 //    private final ConcertService concertService;
     // Microservices version addition
-    private WebClient.Builder webClientBuilder;
+    private final ConcertClient concertClient;
+    private final SingleFlight singleFlight;
 
     private TicketDto mapTicketToDto(Ticket ticket){
+        return mapTicketToDto(ticket, mapConcertToDto(ticket.getReservation().getConcert()),
+                qrCodeStoreService.getQRCodeAsBase64(ticket));
+    }
+
+    // Maps from an already resolved concert, no remote lookups
+    private TicketDto mapTicketToDto(Ticket ticket, ConcertDto concertDto, String qrCode){
         return TicketDto.builder()
                 .ticketId(ticket.getTicketId())
                 .ticketHolder(ticket.getTicketHolder())
@@ -57,11 +77,11 @@ public class TicketService {
                 //.ticketBuyerId(authService.getCurrentUserDetails().getUserId())
                 .ticketBuyerId(ticket.getTicketBuyer().getUserId())
                 .concertId(ticket.getReservation().getConcert().getConcertId())
-                .concert(mapConcertToDto(ticket.getReservation().getConcert()))
+                .concert(concertDto)
                 .price(ticket.getPrice())
                 .purchaseDate(ticket.getPurchaseDate())
                 .phone(ticket.getPhone())
-                .qrcode(qrGeneratorService.generateQRCodeImageToString(ticket))
+                .qrcode(qrCode)
                 .build();
     }
 
@@ -98,13 +118,14 @@ public class TicketService {
     @CircuitBreaker(name = TICKET_MICROSERVICE)
     private ConcertDto mapConcertToDto(Concert concert){
 
-        Mono<ReservationDto> response = webClientBuilder.build()
+        int reservationId = concert.getReservation().getReservationId();
+        //Concurrent lookups of the same reservation share one downstream call
+        ReservationDto reservation = singleFlight.execute("reservation:" +reservationId, () -> concertClient
                 .get()
-                .uri(RESERVATION_BASE_URI +"/" +concert.getReservation().getReservationId())
+                .uri(RESERVATION_BASE_URI +"/" +reservationId)
                 .retrieve()
-                .bodyToMono(ReservationDto.class);
-
-        ReservationDto reservation = response.block();
+                .bodyToMono(ReservationDto.class)
+                .block());
 
         return ConcertDto.builder()
                 .concertId(concert.getConcertId())
@@ -115,34 +136,7 @@ public class TicketService {
                 .date(concert.getDate())
                 .ticketNumber(reservation.getTicketNumber())
                 .ticketPrice(reservation.getTicketPrice())
-                .image(concert.getImage())
-                .build();
-    }
-
-    // Microservices Implementation
-//    @Retry(name = CONCERT_MICROSERVICE)
-//    @CircuitBreaker(name = CONCERT_MICROSERVICE)
-    private Concert mapConcertDto(ConcertDto concertDto){
-
-        Mono<Reservation> response = webClientBuilder.build()
-                .get()
-                .uri(RESERVATION_BASE_URI +"/" + concertDto.getReservationId())
-                .retrieve()
-                .bodyToMono(Reservation.class);
-
-        Mono<Venue> response2 = webClientBuilder.build()
-                .get()
-                .uri(VENUE_BASE_URI +"/" +concertDto.getVenueId())
-                .retrieve()
-                .bodyToMono(Venue.class);
-
-        return Concert.builder()
-                .concertName(concertDto.getConcertName())
-                .description(concertDto.getDescription())
-                .reservation(response.block())
-                .venue(response2.block())
-                .date(concertDto.getDate())
-                .image(concertDto.getImage())
+                .imageUrl(concert.getImageHash() != null ? "/api/concert/" +concert.getConcertId() +"/image" : null)
                 .build();
     }
 
@@ -171,28 +165,46 @@ public class TicketService {
 //                .build();
 //    }
 
-    // Microservices Implementation
-    @Retry(name = TICKET_MICROSERVICE)
-    @CircuitBreaker(name = TICKET_MICROSERVICE)
+    // Microservices Implementation - builds Reservation -> Concert -> Venue from the reserve response
     private Reservation mapReservationDto(ReservationDto reservationDto){
+        ConcertDto concertDto = reservationDto.getConcert();
 
-        Mono<ConcertDto> concertDtoMono = webClientBuilder.build()
-                .get()
-                .uri(CONCERT_BASE_URI +"/" + reservationDto.getConcertId())
-                .retrieve()
-                .bodyToMono(ConcertDto.class);
-
-        ConcertDto concertDto = concertDtoMono.block();
-        assert concertDto != null;
+        Concert concert = Concert.builder()
+                .concertId(concertDto.getConcertId())
+                .concertName(concertDto.getConcertName())
+                .description(concertDto.getDescription())
+                .venue(mapVenueDtoToVenue(concertDto.getVenue()))
+                .date(concertDto.getDate())
+                .build();
 
         return Reservation.builder()
                 .reservationId(reservationDto.getReservationId())
                 .startingDate(reservationDto.getStartingDate())
                 .finalDate(reservationDto.getFinalDate())
                 .ticketNumber(reservationDto.getTicketNumber())
-                .ticketPrice(reservationDto.getTicketPrice())
+                .ticketPrice(concertDto.getTicketPrice())
                 .owner(reservationDto.getOwner())
-                .concert(mapConcertDto(concertDto))
+                .concert(concert)
+                .build();
+    }
+
+    private Venue mapVenueDtoToVenue(VenueDto venueDto){
+        return Venue.builder()
+                .venueId(venueDto.getVenueId())
+                .venueName(venueDto.getVenueName())
+                .address(venueDto.getAddress())
+                .city(venueDto.getCity())
+                .phone(venueDto.getPhone())
+                .capacity(venueDto.getCapacity())
+                .build();
+    }
+
+    private Attendant mapAttendantDto(AttendantDto attendantDto){
+        return Attendant.builder()
+                .userId(attendantDto.getUserId())
+                .firstname(attendantDto.getFirstname())
+                .lastname(attendantDto.getLastname())
+                .email(attendantDto.getEmail())
                 .build();
     }
 
@@ -250,57 +262,61 @@ public class TicketService {
 //        return tickets;
 //    }
 
-    // Microservices Implementation
-    @Retry(name = TICKET_MICROSERVICE)
+    // Microservices Implementation - one remote round trip per order
+    // Not retried, every attempt would reserve the order's tickets again
     @CircuitBreaker(name = TICKET_MICROSERVICE)
     public List<TicketDto> addTickets(List<TicketDto> ticketDtos){
 
-        Mono<ConcertDto> concertDtoMono = webClientBuilder.build()
-                .get()
-                .uri(CONCERT_BASE_URI +"/" + ticketDtos.get(0).getConcertId())
-                .retrieve()
-                .bodyToMono(ConcertDto.class);
-
-        ConcertDto concertDto = concertDtoMono.block();
-        assert concertDto != null;
-        int reservationId = concertDto.getReservationId();
-
-        Mono<ReservationDto> response2 = webClientBuilder.build()
-                .get()
-                .uri(RESERVATION_BASE_URI +"/" +reservationId)
-                .retrieve()
-                .bodyToMono(ReservationDto.class);
-
-        Reservation reservation = mapReservationDto(Objects.requireNonNull(response2.block()));
-
-        List<TicketDto> tickets = new ArrayList<>();
-        if(ticketDtos.size() <= reservation.getTicketNumber()){
-            for(TicketDto ticketDto: ticketDtos){
-                //Buy Ticket if there is any
-                if (checkAvailabilityAndBuyTicket(reservation.getReservationId())){
-                    Ticket ticket = mapTicketDto(ticketDto);
-                    ticket.setReservation(reservation);
-                    ticket.setTicketBuyer(Attendant.builder()
-                            .userId(ticketDto.getTicketBuyer().getUserId())
-                            .firstname(ticketDto.getTicketBuyer().getFirstname())
-                            .lastname(ticketDto.getTicketBuyer().getLastname())
-                            .email(ticketDto.getTicketBuyer().getEmail())
-                            .build());
-                    String ticketId = ticketRepository.save(ticket).getTicketId();
-                    ticket.setPrice(reservation.getTicketPrice());
-                    ticket.setPurchaseDate(Date.from(Instant.now()));
-                    ticket.setTicketId(ticketId);
-                    //Send mail to ticket holder
-                    sendEmailToTicketHolders(ticket, qrGeneratorService.generateQRCodeImageToString(ticket));
-                    ticketDto = mapTicketToDto(ticket);
-                    tickets.add(ticketDto);
-                }
-                else throw new ApplicationException("Tickets are sold out");
+        int concertId = ticketDtos.get(0).getConcertId();
+        //Reserve the whole order at once, the response carries concert, venue and price of the order
+        ReservationDto reservationDto = reserveTickets(concertId, ticketDtos.size());
+        boolean releasedOnRollback = releaseTicketsOnRollback(concertId, ticketDtos.size());
+        try {
+            ConcertDto concertDto = reservationDto.getConcert();
+            Reservation reservation = mapReservationDto(reservationDto);
+            Instant purchaseDate = Instant.now();
+
+            //Single batch insert for all tickets of the order
+            List<Ticket> tickets = ticketRepository.saveAll(ticketDtos.stream()
+                    .map(ticketDto -> {
+                        Ticket ticket = mapTicketDto(ticketDto);
+                        ticket.setReservation(reservation);
+                        ticket.setTicketBuyer(mapAttendantDto(ticketDto.getTicketBuyer()));
+                        ticket.setPrice(reservation.getTicketPrice());
+                        ticket.setPurchaseDate(Date.from(purchaseDate));
+                        return ticket;
+                    })
+                    .collect(toList()));
+            //Ids are generated in memory, so the inserts wait for the flush, run them here to fail before the mails
+            ticketRepository.flush();
+
+            List<TicketDto> ticketDtoList = new ArrayList<>();
+            for(Ticket ticket: tickets){
+                //Rendered once and persisted, later reads are served from the store
+                String qrCode = qrCodeStoreService.getQRCodeAsBase64(ticket);
+                //Send mail to ticket holder
+                sendEmailToTicketHolders(ticket, qrCode);
+                ticketDtoList.add(mapTicketToDto(ticket, concertDto, qrCode));
             }
+            return ticketDtoList;
         }
-        else throw new ApplicationException("Not enough tickets available");
+        catch (RuntimeException e){
+            //Give the reserved tickets back, the order was not completed
+            if(!releasedOnRollback) releaseTickets(concertId, ticketDtos.size());
+            throw e;
+        }
+    }
 
-        return tickets;
+    //Inside a transaction the tickets go back on any rollback, a failed commit included
+    private boolean releaseTicketsOnRollback(Integer concertId, Integer quantity){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) return false;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status){
+                if(status != STATUS_COMMITTED) releaseTickets(concertId, quantity);
+            }
+        });
+        return true;
     }
 
     public TicketDto getTicketById(String id){
@@ -321,26 +337,90 @@ public class TicketService {
                 .price(ticket.getPrice())
                 .purchaseDate(ticket.getPurchaseDate())
                 .phone(ticket.getPhone())
-                .qrcode(qrGeneratorService.generateQRCodeImageToString(ticket))
+                .qrcode(qrCodeStoreService.getQRCodeAsBase64(ticket))
+                .build();
+    }
+
+    public TicketQRCode getTicketQRCode(String id){
+        Ticket ticket = ticketRepository.findById(id)
+                .orElseThrow(()->new ApplicationException("Ticket not found"));
+        return qrCodeStoreService.getQRCode(ticket);
+    }
+
+    //Base64 PNG per ticket id for the concert microservice mails, missing ids are left out
+    public Map<String, String> getTicketQRCodes(List<String> ids){
+        Map<String, String> qrCodes = new HashMap<>();
+        ticketRepository.findAllById(ids)
+                .forEach(ticket -> qrCodes.put(ticket.getTicketId(), qrCodeStoreService.getQRCodeAsBase64(ticket)));
+        return qrCodes;
+    }
+
+    // Gate scan - answered from a projection, no remote calls and no QR rendering
+    public TicketScanDto scanTicket(String id, Integer concertId){
+        //QR codes carry a signed token, plain ticket ids are still accepted
+        if(id.indexOf('.') >= 0){
+            String ticketId = ticketTokenProvider.getTicketIdFromToken(id);
+            if(ticketId == null){
+                return TicketScanDto.builder().status(TicketScanDto.Status.INVALID).build();
+            }
+            id = ticketId;
+        }
+        Optional<TicketScanView> scanView = ticketRepository.findScanViewByTicketId(id);
+        if(scanView.isEmpty() || (concertId != null && !concertId.equals(scanView.get().getConcertId()))){
+            return TicketScanDto.builder()
+                    .ticketId(id)
+                    .concertId(scanView.map(TicketScanView::getConcertId).orElse(null))
+                    .status(TicketScanDto.Status.INVALID)
+                    .build();
+        }
+        TicketScanView ticket = scanView.get();
+        java.util.Date checkInDate = Date.from(Instant.now());
+        if(ticketRepository.checkIn(id, checkInDate) == 1){
+            return mapScanViewToDto(ticket, TicketScanDto.Status.VALID, checkInDate);
+        }
+        //Already checked in, report the time of the first scan
+        return mapScanViewToDto(ticket, TicketScanDto.Status.ALREADY_USED,
+                ticketRepository.findScanViewByTicketId(id).map(TicketScanView::getCheckInDate).orElse(null));
+    }
+
+    private TicketScanDto mapScanViewToDto(TicketScanView ticket, TicketScanDto.Status status, java.util.Date checkInDate){
+        return TicketScanDto.builder()
+                .ticketId(ticket.getTicketId())
+                .concertId(ticket.getConcertId())
+                .ticketHolder(ticket.getTicketHolder())
+                .status(status)
+                .checkInDate(checkInDate)
                 .build();
     }
 
-    public List<TicketDto> getAllTickets(){
-        List<TicketDto> tickets = ticketRepository.findAll()
+    public List<TicketDto> getAllTickets(String after, Integer limit){
+        List<TicketDto> tickets = ticketRepository
+                .findByTicketIdGreaterThanOrderByTicketIdAsc(after == null ? "" : after, pageOf(limit))
                 .stream()
                 .map(this::mapTicketToDto)
                 .collect(toList());
         return tickets;
     }
 
-    public List<TicketDto> getTicketsByConcertID(Integer concertId){
-        List<TicketDto> tickets = ticketRepository.findByReservationConcertConcertId(concertId)
+    public List<TicketDto> getTicketsByConcertID(Integer concertId, String after, Integer limit){
+        List<TicketDto> tickets = ticketRepository
+                .findByReservationConcertConcertIdAndTicketIdGreaterThanOrderByTicketIdAsc(concertId,
+                        after == null ? "" : after, pageOf(limit))
                 .stream()
                 .map(this::mapTicketToDto)
                 .collect(toList());
         return tickets;
     }
 
+    // Keyset pagination: a page holds at most limit rows ordered by id, the next one starts after the last id returned
+    private Pageable pageOf(Integer limit){
+        return PageRequest.of(0, pageSize(limit));
+    }
+
+    public static int pageSize(Integer limit){
+        return limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
     public List<TicketDto> getTicketsByTicketHolderEmail(String ticketHolderEmail){
         List<TicketDto> tickets = ticketRepository.findByTicketHolderEmail(ticketHolderEmail)
                 .stream()
@@ -384,7 +464,15 @@ public class TicketService {
     }
 
     public String deleteTicket(String ticketId) {
+        //Revoked tickets are published with the gate manifest of the concert
+        ticketRepository.findScanViewByTicketId(ticketId)
+                .ifPresent(ticket -> ticketRevocationRepository.save(TicketRevocation.builder()
+                        .ticketId(ticket.getTicketId())
+                        .concertId(ticket.getConcertId())
+                        .revokedDate(Date.from(Instant.now()))
+                        .build()));
         ticketRepository.deleteById(ticketId);
+        qrCodeStoreService.deleteQRCode(ticketId);
         return "Ticket with id:" + ticketId + " was deleted.";
     }
 
@@ -400,25 +488,33 @@ public class TicketService {
 //        else return false;
 //    }
 
-    // Microservices Implementation
-    @Retry(name = TICKET_MICROSERVICE)
-    @CircuitBreaker(name = TICKET_MICROSERVICE)
-    private boolean checkAvailabilityAndBuyTicket(Integer reservationId){
+    // Microservices Implementation - atomic decrement owned by Concert Microservice
+    private ReservationDto reserveTickets(Integer concertId, Integer quantity){
 
-        Mono<ReservationDto> response = webClientBuilder.build()
-                .get()
-                .uri(RESERVATION_BASE_URI +"/" +reservationId)
+        Mono<ReservationDto> response = concertClient
+                .put()
+                .uri(RESERVATION_BASE_URI +"/reserve/" +concertId +"/" +quantity)
                 .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> clientResponse
+                        .bodyToMono(String.class)
+                        .map(ApplicationException::new))
                 .bodyToMono(ReservationDto.class);
 
-        Reservation reservation = mapReservationDto(response.block());
+        return Objects.requireNonNull(response.block());
+    }
 
-        if (reservation.getTicketNumber() > 0){
-            //Reduce ticket count
-            reservation.setTicketNumber(reservation.getTicketNumber()-1);
-            return true;
+    private void releaseTickets(Integer concertId, Integer quantity){
+        try {
+            concertClient
+                    .put()
+                    .uri(RESERVATION_BASE_URI +"/release/" +concertId +"/" +quantity)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block();
+        }
+        catch (RuntimeException e){
+            log.error("Failed to release " +quantity +" tickets of concert with id:" +concertId, e);
         }
-        else return false;
     }
 
     private void sendEmailToTicketHolders(Ticket ticket, String qrString){
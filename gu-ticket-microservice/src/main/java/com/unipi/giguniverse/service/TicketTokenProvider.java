@@ -0,0 +1,104 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import com.unipi.giguniverse.model.Ticket;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.*;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Signs ticket QR payloads with a dedicated ticket-signing key pair, never the key the gateway signs login JWTs with.
+ Tokens carry the key alias as kid, typ "ticket" and aud "giguniverse-gate", the gateway and the services refuse
+ tokens of that type or audience as bearer tokens. Gate scanners verify the token offline with the public key from
+ /api/ticket/manifest/key.
+ The bundled /ticket-signing.jks (password "giguniverse", like the login keystore) is for development only,
+ deployments point ticket.token.keystore and ticket.token.keystore-password at their own keystore.
+ */
+@Service
+public class TicketTokenProvider {
+
+    //Also known to JwtProvider and JwtVerificationFilter, which reject these tokens
+    public static final String TOKEN_TYPE = "ticket";
+    public static final String AUDIENCE = "giguniverse-gate";
+    private static final String CONCERT_CLAIM = "cid";
+
+    @Value("${ticket.token.keystore:/ticket-signing.jks}")
+    private String keyStorePath;
+    @Value("${ticket.token.keystore-password:giguniverse}")
+    private String keyStorePassword;
+    @Value("${ticket.token.key-alias:ticket-signing}")
+    private String keyAlias;
+    @Value("${ticket.token.validity-days:365}")
+    private long validityDays;
+    private PrivateKey privateKey;
+    private PublicKey publicKey;
+
+    @PostConstruct
+    public void init() {
+        try {
+            KeyStore keyStore = KeyStore.getInstance("JKS");
+            InputStream resourceAsStream = getClass().getResourceAsStream(keyStorePath);
+            keyStore.load(resourceAsStream, keyStorePassword.toCharArray());
+            privateKey = (PrivateKey) keyStore.getKey(keyAlias, keyStorePassword.toCharArray());
+            Certificate certificate = keyStore.getCertificate(keyAlias);
+            if(privateKey == null || certificate == null){
+                throw new ApplicationException("Exception occurred! No key pair for ticket signing key: " + keyAlias);
+            }
+            publicKey = certificate.getPublicKey();
+        }
+        catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException
+                | UnrecoverableKeyException e) {
+            throw new ApplicationException("Exception occurred while loading keystore", e);
+        }
+    }
+
+    //Only immutable ticket data is signed, expiry included, so the token of a ticket never changes
+    public String generateTicketToken(Ticket ticket){
+        return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, keyAlias)
+                .setHeaderParam(JwsHeader.TYPE, TOKEN_TYPE)
+                .setSubject(ticket.getTicketId())
+                .setAudience(AUDIENCE)
+                .claim(CONCERT_CLAIM, ticket.getReservation().getConcert().getConcertId())
+                .setIssuedAt(ticket.getPurchaseDate())
+                .setExpiration(new Date(ticket.getPurchaseDate().getTime() + TimeUnit.DAYS.toMillis(validityDays)))
+                .signWith(privateKey)
+                .compact();
+    }
+
+    //Ticket id of a valid, unexpired ticket token, null otherwise
+    public String getTicketIdFromToken(String token){
+        try {
+            Jws<Claims> jws = Jwts.parser()
+                    .setSigningKey(publicKey)
+                    .requireAudience(AUDIENCE)
+                    .parseClaimsJws(token);
+            if(!TOKEN_TYPE.equals(jws.getHeader().getType())) return null;
+            return jws.getBody().getSubject();
+        }
+        catch (JwtException | IllegalArgumentException e){
+            return null;
+        }
+    }
+
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public String getKeyId() {
+        return keyAlias;
+    }
+}
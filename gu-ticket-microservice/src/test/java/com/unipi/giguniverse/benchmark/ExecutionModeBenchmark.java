@@ -0,0 +1,69 @@
+package com.unipi.giguniverse.benchmark;
+
+import com.unipi.giguniverse.config.ExecutorConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Platform vs virtual threads for concurrent purchase requests. Each request blocks on a
+ downstream call like TicketService.reserveTickets does, the platform pool matches Tomcat's default 200 threads.
+ The virtual mode needs a Java 21 JVM, run the main method on JDK 21 from a build with -Pjava21.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionModeBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final Duration DOWNSTREAM_LATENCY = Duration.ofMillis(50);
+
+    @Param({"1000", "5000", "10000"})
+    private int concurrentRequests;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        executor = "virtual".equals(mode)
+                ? ExecutorConfig.newVirtualThreadExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void purchaseRequests() throws InterruptedException {
+        CountDownLatch completed = new CountDownLatch(concurrentRequests);
+        for(int i = 0; i < concurrentRequests; i++){
+            executor.execute(() -> {
+                Mono.delay(DOWNSTREAM_LATENCY).block();
+                completed.countDown();
+            });
+        }
+        completed.await();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExecutionModeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
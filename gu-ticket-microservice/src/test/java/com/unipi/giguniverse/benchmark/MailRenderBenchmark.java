@@ -0,0 +1,99 @@
+package com.unipi.giguniverse.benchmark;
+
+import com.unipi.giguniverse.model.Concert;
+import com.unipi.giguniverse.model.Reservation;
+import com.unipi.giguniverse.model.Ticket;
+import com.unipi.giguniverse.service.MailContentBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Renders 10k ticket emails per invocation, with the template cache on (as spring.thymeleaf.cache does by default)
+ and off (every render parses ticketTemplate again). Scores are emails per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MailRenderBenchmark {
+
+    private static final int EMAILS = 10_000;
+
+    private MailContentBuilder cachedTemplates;
+    private MailContentBuilder uncachedTemplates;
+    private Ticket[] tickets;
+    private String qrString;
+
+    @Setup
+    public void setUp(){
+        cachedTemplates = mailContentBuilder(true);
+        cachedTemplates.precompileTemplates();
+        uncachedTemplates = mailContentBuilder(false);
+
+        Concert concert = Concert.builder().concertName("Concert").date(new Date()).build();
+        Reservation reservation = Reservation.builder().concert(concert).build();
+        tickets = new Ticket[EMAILS];
+        for(int i = 0; i < EMAILS; i++){
+            tickets[i] = Ticket.builder()
+                    .ticketId("ticket-" + i)
+                    .ticketHolder("Ticket Holder " + i)
+                    .ticketHolderEmail("holder" + i + "@email.com")
+                    .phone("6900000000")
+                    .price(25.0)
+                    .purchaseDate(new Date())
+                    .reservation(reservation)
+                    .build();
+        }
+        //Roughly the size of a 150x150 QR code PNG
+        qrString = Base64.getEncoder().encodeToString(new byte[1200]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMAILS)
+    public void cachedTemplates(Blackhole blackhole){
+        for(Ticket ticket : tickets){
+            blackhole.consume(cachedTemplates.buildTicketMail(ticket, qrString));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMAILS)
+    public void uncachedTemplates(Blackhole blackhole){
+        for(Ticket ticket : tickets){
+            blackhole.consume(uncachedTemplates.buildTicketMail(ticket, qrString));
+        }
+    }
+
+    private static MailContentBuilder mailContentBuilder(boolean cacheable){
+        ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix("templates/");
+        templateResolver.setSuffix(".html");
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setCharacterEncoding("UTF-8");
+        templateResolver.setCacheable(cacheable);
+        TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        return new MailContentBuilder(templateEngine, new DefaultResourceLoader());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MailRenderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
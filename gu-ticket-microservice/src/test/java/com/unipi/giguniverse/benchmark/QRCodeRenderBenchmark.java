@@ -0,0 +1,56 @@
+package com.unipi.giguniverse.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.unipi.giguniverse.service.QRCodePngEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Compares the ImageIO PNG path against QRCodePngEncoder for a 150x150 ticket QR code.
+ Run the main method, the gc profiler reports bytes allocated per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QRCodeRenderBenchmark {
+
+    private BitMatrix bitMatrix;
+
+    @Setup
+    public void setUp() throws Exception {
+        String qrText = "0b6f3c1e-2f4a-4c1d-9d8e-7a5b3c2d1e0f\nConcert\nTicket Holder\nholder@email.com\n2021-06-01";
+        bitMatrix = new QRCodeWriter().encode(qrText, BarcodeFormat.QR_CODE, 150, 150);
+    }
+
+    @Benchmark
+    public byte[] imageIO() throws IOException {
+        ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(bitMatrix, "PNG", pngOutputStream);
+        return pngOutputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] pngEncoder(){
+        return QRCodePngEncoder.encode(bitMatrix);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QRCodeRenderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,49 @@
+package com.unipi.giguniverse.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight singleFlight = new SingleFlight(meterRegistry);
+
+    @Test
+    void collapsedCallersGetTheErrorOfTheIssuingCall() throws Exception {
+        Error failure = new Error("downstream");
+        CountDownLatch issued = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Object> issuer = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            issued.countDown();
+            await(release);
+            throw failure;
+        }));
+        issued.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> "second"));
+        while(meterRegistry.counter("singleflight.calls", "result", "collapsed").count() < 1){
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> issuer.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
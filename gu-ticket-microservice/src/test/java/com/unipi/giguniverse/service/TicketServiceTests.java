@@ -0,0 +1,172 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.client.ConcertClient;
+import com.unipi.giguniverse.client.SingleFlight;
+import com.unipi.giguniverse.dto.AttendantDto;
+import com.unipi.giguniverse.dto.TicketDto;
+import com.unipi.giguniverse.model.Ticket;
+import com.unipi.giguniverse.model.TicketQRCode;
+import com.unipi.giguniverse.repository.TicketQRCodeRepository;
+import com.unipi.giguniverse.repository.TicketRepository;
+import com.unipi.giguniverse.repository.TicketRevocationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TicketServiceTests {
+
+    private static final String RESERVATION_JSON = "{\"reservationId\":7,\"concertId\":3,\"ticketNumber\":100," +
+            "\"concert\":{\"concertId\":3,\"reservationId\":7,\"concertName\":\"Concert\",\"venueId\":2," +
+            "\"venue\":{\"venueId\":2,\"venueName\":\"Venue\",\"capacity\":500}," +
+            "\"date\":1640995200000,\"ticketPrice\":25.5,\"ticketNumber\":100}}";
+
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    private final List<String> remotePaths = new ArrayList<>();
+    private TicketRepository ticketRepository;
+    private MailService mailService;
+    private TicketTokenProvider ticketTokenProvider;
+    private TicketService ticketService;
+
+    @BeforeEach
+    void setUp(){
+        ticketRepository = mock(TicketRepository.class);
+        when(ticketRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<Ticket> tickets = invocation.getArgument(0);
+            tickets.forEach(ticket -> ticket.setTicketId(UUID.randomUUID().toString()));
+            return tickets;
+        });
+
+        WebClient.Builder webClientBuilder = WebClient.builder()
+                .exchangeFunction(request -> {
+                    remoteCalls.incrementAndGet();
+                    remotePaths.add(request.url().getPath());
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(RESERVATION_JSON)
+                            .build());
+                });
+
+        TicketQRCodeRepository ticketQRCodeRepository = mock(TicketQRCodeRepository.class);
+        when(ticketQRCodeRepository.findById(any())).thenReturn(Optional.empty());
+        when(ticketQRCodeRepository.save(any(TicketQRCode.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ticketTokenProvider = mock(TicketTokenProvider.class);
+        when(ticketTokenProvider.getKeyId()).thenReturn("ticket-signing");
+        when(ticketTokenProvider.generateTicketToken(any())).thenAnswer(invocation ->
+                invocation.<Ticket>getArgument(0).getTicketId());
+
+        mailService = mock(MailService.class);
+        QRGeneratorService qrGeneratorService = new QRGeneratorService();
+        ticketService = new TicketService(ticketRepository, mailService, qrGeneratorService,
+                new QRCodeStoreService(ticketQRCodeRepository, qrGeneratorService, ticketTokenProvider, 16 * 1024 * 1024),
+                ticketTokenProvider, mock(TicketRevocationRepository.class),
+                new ConcertClient(webClientBuilder, new ReactorClientHttpConnector()),
+                new SingleFlight(new SimpleMeterRegistry()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100})
+    void addTicketsMakesOneRemoteCallPerOrder(int quantity){
+        List<TicketDto> order = IntStream.range(0, quantity)
+                .mapToObj(i -> TicketDto.builder()
+                        .concertId(3)
+                        .ticketHolder("Holder " + i)
+                        .ticketHolderEmail("holder" + i + "@email.com")
+                        .ticketBuyer(AttendantDto.builder().userId(1).email("buyer@email.com").build())
+                        .build())
+                .collect(toList());
+
+        List<TicketDto> tickets = ticketService.addTickets(order);
+
+        assertEquals(quantity, tickets.size());
+        assertEquals(1, remoteCalls.get());
+        verify(ticketRepository, times(1)).saveAll(any());
+        tickets.forEach(ticket -> assertEquals(25.5, ticket.getPrice()));
+    }
+
+    @Test
+    void failureAfterTheInsertReleasesTheReservedTickets(){
+        doThrow(new IllegalStateException("mail")).when(mailService).sendTicketEMail(any(), any());
+
+        assertThrows(IllegalStateException.class, () -> ticketService.addTickets(order(2)));
+
+        assertEquals(List.of("/api/reservation/reserve/3/2", "/api/reservation/release/3/2"), remotePaths);
+    }
+
+    @Test
+    void rolledBackTransactionReleasesTheReservedTicketsOnce(){
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            doThrow(new IllegalStateException("mail")).when(mailService).sendTicketEMail(any(), any());
+            assertThrows(IllegalStateException.class, () -> ticketService.addTickets(order(2)));
+            assertEquals(1, remoteCalls.get());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+            assertEquals(List.of("/api/reservation/reserve/3/2", "/api/reservation/release/3/2"), remotePaths);
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private List<TicketDto> order(int quantity){
+        return IntStream.range(0, quantity)
+                .mapToObj(i -> TicketDto.builder()
+                        .concertId(3)
+                        .ticketHolder("Holder " + i)
+                        .ticketHolderEmail("holder" + i + "@email.com")
+                        .ticketBuyer(AttendantDto.builder().userId(1).email("buyer@email.com").build())
+                        .build())
+                .collect(toList());
+    }
+
+    @Test
+    void qrCodeReadsDoNotSignTheTokenAgain(){
+        List<Ticket> saved = new ArrayList<>();
+        when(ticketRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<Ticket> tickets = invocation.getArgument(0);
+            tickets.forEach(ticket -> ticket.setTicketId(UUID.randomUUID().toString()));
+            saved.addAll(tickets);
+            return tickets;
+        });
+        ticketService.addTickets(List.of(TicketDto.builder()
+                .concertId(3)
+                .ticketHolder("Holder")
+                .ticketHolderEmail("holder@email.com")
+                .ticketBuyer(AttendantDto.builder().userId(1).email("buyer@email.com").build())
+                .build()));
+        Ticket ticket = saved.get(0);
+        when(ticketRepository.findById(ticket.getTicketId())).thenReturn(Optional.of(ticket));
+
+        ticketService.getTicketQRCode(ticket.getTicketId());
+        ticketService.getTicketQRCode(ticket.getTicketId());
+
+        verify(ticketTokenProvider, times(1)).generateTicketToken(any());
+    }
+}
@@ -0,0 +1,54 @@
+package com.unipi.giguniverse.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ Near-cache of concert catalog responses (ConcertDto and lists of them), bounded by size and TTL.
+ Cleared whenever a concert, reservation or venue is written through the gateway, the TTL bounds
+ staleness for writes made elsewhere. Hit/miss metrics are published as cache.* {cache=concertCatalog}.
+ */
+@Component
+public class ConcertCatalogCache {
+
+    private final Cache<String, Object> cache;
+    //Bumped on invalidation, loads started before it are not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    public ConcertCatalogCache(MeterRegistry meterRegistry,
+                               @Value("${concert.cache.max-size:10000}") long maxSize,
+                               @Value("${concert.cache.ttl-seconds:300}") long ttlSeconds){
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "concertCatalog");
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> get(String key, Supplier<Mono<T>> loader){
+        return Mono.defer(() -> {
+            T cached = (T) cache.getIfPresent(key);
+            if(cached != null) return Mono.just(cached);
+            long loadGeneration = generation.get();
+            return loader.get().doOnNext(value -> {
+                if(generation.get() == loadGeneration) cache.put(key, value);
+            });
+        });
+    }
+
+    public void invalidateAll(){
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,14 @@
+package com.unipi.giguniverse.client;
+
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+//Client of gu-concert-microservice, concert and reservation endpoints
+@Component
+public class ConcertClient extends DownstreamClient {
+
+    public ConcertClient(WebClient.Builder webClientBuilder, ClientHttpConnector downstreamConnector){
+        super(webClientBuilder, downstreamConnector);
+    }
+}
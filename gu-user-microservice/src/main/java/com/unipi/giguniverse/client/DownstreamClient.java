@@ -0,0 +1,80 @@
+package com.unipi.giguniverse.client;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.function.Function;
+
+/**
+ One WebClient per downstream service, built once on the pooled connector.
+ Requests carry the caller's JWT, the downstream services verify it themselves. Requests built on the request thread
+ get the header directly, requests built later (inside a defer, a shared flight or a retry on a Netty thread) take it
+ from the Reactor Context that callerAuthorization() fills on the request thread.
+ */
+public abstract class DownstreamClient {
+
+    private static final String AUTHORIZATION_CONTEXT_KEY = DownstreamClient.class.getName() + ".authorization";
+
+    private final WebClient webClient;
+
+    protected DownstreamClient(WebClient.Builder webClientBuilder, ClientHttpConnector downstreamConnector){
+        //clone() keeps the load balancer filter of the shared @LoadBalanced builder
+        this.webClient = webClientBuilder.clone()
+                .clientConnector(downstreamConnector)
+                .filter(authorizationFromContext())
+                .build();
+    }
+
+    public WebClient.RequestHeadersUriSpec<?> get(){
+        return withAuthorization(webClient.get());
+    }
+
+    public WebClient.RequestBodyUriSpec post(){
+        return withAuthorization(webClient.post());
+    }
+
+    public WebClient.RequestBodyUriSpec put(){
+        return withAuthorization(webClient.put());
+    }
+
+    public WebClient.RequestHeadersUriSpec<?> delete(){
+        return withAuthorization(webClient.delete());
+    }
+
+    //Call on the request thread and pass to contextWrite of a Mono whose requests are built later
+    public static Function<Context, Context> callerAuthorization(){
+        String authorization = currentAuthorization();
+        return context -> authorization == null || context.hasKey(AUTHORIZATION_CONTEXT_KEY)
+                ? context
+                : context.put(AUTHORIZATION_CONTEXT_KEY, authorization);
+    }
+
+    private static <S extends WebClient.RequestHeadersSpec<?>> S withAuthorization(S spec){
+        String authorization = currentAuthorization();
+        if(authorization != null) spec.header(HttpHeaders.AUTHORIZATION, authorization);
+        return spec;
+    }
+
+    private static String currentAuthorization(){
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        return attributes != null ? attributes.getRequest().getHeader(HttpHeaders.AUTHORIZATION) : null;
+    }
+
+    private static ExchangeFilterFunction authorizationFromContext(){
+        return (request, next) -> {
+            if(request.headers().containsKey(HttpHeaders.AUTHORIZATION)) return next.exchange(request);
+            return Mono.deferContextual(context -> next.exchange(context.<String>getOrEmpty(AUTHORIZATION_CONTEXT_KEY)
+                    .map(authorization -> ClientRequest.from(request)
+                            .header(HttpHeaders.AUTHORIZATION, authorization)
+                            .build())
+                    .orElse(request)));
+        };
+    }
+}
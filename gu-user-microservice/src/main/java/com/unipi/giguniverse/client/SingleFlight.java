@@ -0,0 +1,46 @@
+package com.unipi.giguniverse.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ Collapses concurrent identical lookups into one downstream call, every waiter gets the same result.
+ Only for idempotent reads, the key is dropped as soon as the call completes so nothing is cached.
+ Counted as singleflight.calls{result=issued|collapsed}.
+ */
+@Component
+public class SingleFlight {
+
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private final Counter issued;
+    private final Counter collapsed;
+
+    public SingleFlight(MeterRegistry meterRegistry){
+        this.issued = meterRegistry.counter("singleflight.calls", "result", "issued");
+        this.collapsed = meterRegistry.counter("singleflight.calls", "result", "collapsed");
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String key, Supplier<Mono<T>> call){
+        return Mono.defer(() -> {
+            AtomicReference<Mono<?>> created = new AtomicReference<>();
+            Mono<T> shared = (Mono<T>) inFlight.computeIfAbsent(key, k -> {
+                Mono<T> flight = Mono.defer(call)
+                        //Only remove this flight, a later one may already own the key
+                        .doFinally(signal -> inFlight.remove(k, created.get()))
+                        .share();
+                created.set(flight);
+                return flight;
+            });
+            (created.get() != null ? issued : collapsed).increment();
+            return shared;
+        });
+    }
+}
@@ -0,0 +1,55 @@
+package com.unipi.giguniverse.config;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ executor.mode=virtual runs Tomcat requests and @Async methods on virtual threads (Java 21, see the java21 maven profile).
+ Blocking calls like WebClient block() and JDBC then park a virtual thread instead of holding a platform thread.
+ The default executor.mode=platform keeps the Tomcat worker pool and Spring's task executor.
+ */
+@Configuration
+@ConditionalOnProperty(name = "executor.mode", havingValue = "virtual")
+@Slf4j
+public class ExecutorConfig implements AsyncConfigurer {
+
+    private final ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(){
+        log.info("Handling requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    // @Async methods
+    @Override
+    public Executor getAsyncExecutor(){
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        virtualThreadExecutor.shutdown();
+    }
+
+    // Looked up reflectively so the services still build with java.version 11
+    public static ExecutorService newVirtualThreadExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ApplicationException("executor.mode=virtual requires Java 21 or newer", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.unipi.giguniverse.config;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GoogleOAuthConstants;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ One Google ID token verifier for the application. GooglePublicKeysManager keeps the downloaded certificates until the
+ max-age of their Cache-Control header, GoogleUserVerification refreshes them in the background before that.
+ google.certs-url and google.issuers point the verifier at a stand-in issuer, or replace the
+ GooglePublicKeysManager bean altogether.
+ */
+@Configuration
+public class GoogleVerifierConfig {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public GooglePublicKeysManager googlePublicKeysManager(
+            @Value("${google.certs-url:" + GoogleOAuthConstants.DEFAULT_PUBLIC_CERTS_ENCODED_URL + "}") String certsUrl){
+        return new GooglePublicKeysManager.Builder(new NetHttpTransport(), JacksonFactory.getDefaultInstance())
+                .setPublicCertsEncodedUrl(certsUrl)
+                .build();
+    }
+
+    @Bean
+    public GoogleIdTokenVerifier googleIdTokenVerifier(GooglePublicKeysManager googlePublicKeysManager,
+                                                       @Value("${google.ClientId}") String googleClientId,
+                                                       @Value("${google.issuers:accounts.google.com,https://accounts.google.com}")
+                                                               List<String> issuers){
+        return new GoogleIdTokenVerifier.Builder(googlePublicKeysManager)
+                // Specify the CLIENT_ID of the app that accesses the backend:
+                .setAudience(Collections.singletonList(googleClientId))
+                .setIssuers(issuers)
+                .build();
+    }
+}
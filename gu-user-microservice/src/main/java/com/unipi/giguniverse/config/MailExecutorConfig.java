@@ -0,0 +1,32 @@
+package com.unipi.giguniverse.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Bounded executor for outgoing mail, kept apart from the @Async pool so a registration burst or a slow SMTP server
+ cannot pile up unbounded work. A full queue rejects and MailService spills the mail to the outbox instead.
+ Publishes executor.queued, executor.active, executor.pool.size and the executor / executor.idle timers tagged name=mail.
+ */
+@Configuration
+public class MailExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService mailExecutor(MeterRegistry meterRegistry,
+                                        @Value("${mail.executor.threads:2}") int threads,
+                                        @Value("${mail.executor.queue-size:200}") int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("mail-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "mail");
+    }
+}
@@ -0,0 +1,35 @@
+package com.unipi.giguniverse.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Bounded executor for BCrypt work on login and signup, so a login storm is capped at password.hashing.threads
+ cores instead of burning one per request thread. A full queue rejects and BoundedPasswordEncoder answers 429.
+ Publishes executor.queued, executor.active, executor.pool.size and the executor / executor.idle timers tagged
+ name=passwordHash.
+ */
+@Configuration
+public class PasswordHashExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService passwordHashExecutor(MeterRegistry meterRegistry,
+                                                @Value("${password.hashing.threads:0}") int threads,
+                                                @Value("${password.hashing.queue-size:100}") int queueSize) {
+        //0 means one thread per core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "passwordHash");
+    }
+}
@@ -13,7 +13,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
@@ -27,6 +26,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     private final UserDetailsService userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    //BoundedPasswordEncoder
+    private final PasswordEncoder passwordEncoder;
 
     @Override
     @Bean(BeanIds.AUTHENTICATION_MANAGER)
@@ -58,12 +59,18 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.POST ,"/api/concert/**").hasAuthority(CONCERT_WRITE.getPermission())
                 .antMatchers(HttpMethod.PUT ,"/api/concert/**").hasAuthority(CONCERT_WRITE.getPermission())
                 .antMatchers(HttpMethod.DELETE ,"/api/concert/**").hasAuthority(CONCERT_WRITE.getPermission())
+                .antMatchers(HttpMethod.GET, "/api/concert/*/notifications").hasAuthority(CONCERT_WRITE.getPermission())
                 .antMatchers(HttpMethod.GET, "/api/concert/**").permitAll()
+                //Referenced by imageUrl from <img> tags, which send no Authorization header
+                .antMatchers(HttpMethod.GET, "/api/image/**").permitAll()
                 //Reservations
                 .antMatchers(HttpMethod.POST ,"/api/reservation/**").hasAuthority(RESERVATION_WRITE.getPermission())
                 .antMatchers(HttpMethod.PUT ,"/api/reservation/**").hasAuthority(RESERVATION_WRITE.getPermission())
                 .antMatchers(HttpMethod.DELETE ,"/api/reservation/**").hasAuthority(RESERVATION_WRITE.getPermission())
                 //Tickets
+                .antMatchers(HttpMethod.POST ,"/api/ticket/scan/**").hasRole(ApplicationUserRole.OWNER.name())
+                .antMatchers(HttpMethod.GET ,"/api/ticket/manifest/**").hasRole(ApplicationUserRole.OWNER.name())
+                .antMatchers(HttpMethod.GET ,"/api/ticket/concert/*/export").hasRole(ApplicationUserRole.OWNER.name())
                 .antMatchers(HttpMethod.POST ,"/api/ticket/**").hasAuthority(TICKET_WRITE.getPermission())
                 .antMatchers(HttpMethod.PUT ,"/api/ticket/**").hasAuthority(TICKET_WRITE.getPermission())
                 .antMatchers(HttpMethod.DELETE ,"/api/ticket/**").hasAuthority(TICKET_WRITE.getPermission())
@@ -77,16 +84,11 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
     }
 
-    //Authentication manager
+    //Authentication manager, rehashes through UserDetailsServiceImpl.updatePassword when the BCrypt factor changes
     @Autowired
     public void configureGlobal(AuthenticationManagerBuilder authenticationManagerBuilder) throws Exception {
         authenticationManagerBuilder.userDetailsService(userDetailsService)
-                .passwordEncoder(passwordEncoder());
-    }
-
-    @Bean
-    PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+                .passwordEncoder(passwordEncoder);
     }
 
 }
@@ -0,0 +1,49 @@
+package com.unipi.giguniverse.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ Connection pool shared by the downstream clients, pool metrics are published to micrometer
+ under reactor.netty.connection.provider.downstream.
+ */
+@Configuration
+public class WebClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider downstreamConnectionProvider(
+            @Value("${webclient.pool.max-connections:200}") int maxConnections,
+            @Value("${webclient.pool.pending-acquire-max-count:1000}") int pendingAcquireMaxCount,
+            @Value("${webclient.pool.pending-acquire-timeout-ms:5000}") long pendingAcquireTimeout,
+            @Value("${webclient.pool.max-idle-time-ms:30000}") long maxIdleTime,
+            @Value("${webclient.pool.max-life-time-ms:300000}") long maxLifeTime,
+            @Value("${webclient.pool.evict-interval-ms:30000}") long evictInterval){
+        return ConnectionProvider.builder("downstream")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeout))
+                .maxIdleTime(Duration.ofMillis(maxIdleTime))
+                .maxLifeTime(Duration.ofMillis(maxLifeTime))
+                //Idle connections are closed in the background, not only when acquired
+                .evictInBackground(Duration.ofMillis(evictInterval))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public ClientHttpConnector downstreamConnector(ConnectionProvider downstreamConnectionProvider,
+                                                   @Value("${webclient.connect-timeout-ms:2000}") int connectTimeout){
+        HttpClient httpClient = HttpClient.create(downstreamConnectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout);
+        return new ReactorClientHttpConnector(httpClient);
+    }
+}
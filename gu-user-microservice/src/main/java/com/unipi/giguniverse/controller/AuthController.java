@@ -1,18 +1,22 @@
 package com.unipi.giguniverse.controller;
 
 import com.unipi.giguniverse.dto.*;
+import com.unipi.giguniverse.security.JwtProvider;
 import com.unipi.giguniverse.service.AuthService;
 import com.unipi.giguniverse.service.RefreshTokenService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -21,6 +25,7 @@ public class AuthController {
 
     private final AuthService authService;
     private final RefreshTokenService refreshTokenService;
+    private final JwtProvider jwtProvider;
 
     @PostMapping("/signup-owner")
     public ResponseEntity<String> signupOwner(@Valid @RequestBody RegisterOwnerRequest registerOwnerRequest){
@@ -41,8 +46,17 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public AuthenticationResponse login(@Valid @RequestBody LoginRequest loginRequest){
-        return authService.login(loginRequest);
+    public AuthenticationResponse login(@Valid @RequestBody LoginRequest loginRequest, HttpServletRequest request){
+        return authService.login(loginRequest, request.getRemoteAddr());
+    }
+
+    //Public keys for verifying our JWTs, fetched by the other microservices
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> getJwks(){
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES))
+                .body(jwtProvider.getJwks());
     }
 
     @PostMapping("/googleLogin")
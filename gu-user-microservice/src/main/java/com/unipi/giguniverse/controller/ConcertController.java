@@ -1,14 +1,18 @@
 package com.unipi.giguniverse.controller;
 
 import com.unipi.giguniverse.dto.ConcertDto;
+import com.unipi.giguniverse.dto.NotificationJobDto;
 import com.unipi.giguniverse.model.Venue;
 import com.unipi.giguniverse.service.ConcertService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -22,67 +26,103 @@ public class ConcertController {
     private final ConcertService concertService;
 
     @PostMapping
-    public ResponseEntity<ConcertDto> addConcert(@RequestBody ConcertDto concertDto){
-        return ResponseEntity
-                .status(HttpStatus.CREATED)
-                .body(concertService.addConcertAndReservation(concertDto));
+    public Mono<ResponseEntity<ConcertDto>> addConcert(@RequestBody ConcertDto concertDto){
+        return concertService.addConcertAndReservation(concertDto)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(body));
                 //.body(concertService.addConcert(concertDto));
     }
 
     @GetMapping
-    public ResponseEntity<List<ConcertDto>> getAllConcerts(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.getAllConcerts());
+    public Mono<ResponseEntity<List<ConcertDto>>> getAllConcerts(@RequestParam(required = false) Integer after,
+                                                                 @RequestParam(required = false) Integer limit){
+        UriComponentsBuilder request = NextPageLink.currentRequest();
+        return concertService.getAllConcerts(after, limit)
+                .map(body -> NextPageLink.page(request, body, NextPageLink.pageSize(limit), ConcertDto::getConcertId));
     }
 
     @GetMapping("/owner")
-    public ResponseEntity<List<ConcertDto>> getAllConcertsByLoggedInOwner(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.getConcertByLoggedInOwner());
+    public Mono<ResponseEntity<List<ConcertDto>>> getAllConcertsByLoggedInOwner(){
+        return concertService.getConcertByLoggedInOwner()
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<ConcertDto> getConcertById(@PathVariable Integer id){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.getConcertById(id));
+    public Mono<ResponseEntity<ConcertDto>> getConcertById(@PathVariable Integer id){
+        return concertService.getConcertById(id)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
+    }
+
+    @GetMapping("/{id}/image")
+    public Mono<ResponseEntity<byte[]>> getConcertImage(@PathVariable Integer id,
+                                                        @RequestParam(required = false) String size,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+        return concertService.getConcertImage(id, size, ifNoneMatch)
+                .map(image -> ResponseEntity
+                        .status(image.getStatusCode())
+                        .headers(headers -> {
+                            for(String name : List.of(HttpHeaders.ETAG, HttpHeaders.CACHE_CONTROL, HttpHeaders.CONTENT_TYPE)){
+                                List<String> values = image.getHeaders().get(name);
+                                if(values != null) headers.put(name, values);
+                            }
+                        })
+                        .body(image.getBody()));
     }
 
     @GetMapping("/date/{date}")
-    public ResponseEntity<List<ConcertDto>> getConcertByDate(@PathVariable @DateTimeFormat(pattern="yyyy-MM-dd")LocalDate date){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.getConcertByDate(date));
+    public Mono<ResponseEntity<List<ConcertDto>>> getConcertByDate(@PathVariable @DateTimeFormat(pattern="yyyy-MM-dd")LocalDate date){
+        return concertService.getConcertByDate(date)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @GetMapping("/month/{date}")
-    public ResponseEntity<List<ConcertDto>> getConcertByMonth(@PathVariable @DateTimeFormat(pattern="yyyy-MM-dd") LocalDate date){
+    public Mono<ResponseEntity<List<ConcertDto>>> getConcertByMonth(@PathVariable @DateTimeFormat(pattern="yyyy-MM-dd") LocalDate date){
         System.out.println(date);
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.getConcertByMonth(date));
+        return concertService.getConcertByMonth(date)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
+    }
+
+    //Reschedule/cancellation mail progress: total, rendered and failed per job
+    //Kept in memory by the concert instance that ran the job, with several instances behind the load balancer
+    //the answer lists only the jobs of the instance that served it and may be empty while a job runs elsewhere
+    @GetMapping("/{id}/notifications")
+    public Mono<ResponseEntity<List<NotificationJobDto>>> getNotificationJobs(@PathVariable Integer id){
+        return concertService.getNotificationJobs(id)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @GetMapping("/venue/{venue}")
-    public ResponseEntity<List<ConcertDto>> getConcertByVenue(@PathVariable Venue venue){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.getConcertByVenue(venue));
+    public Mono<ResponseEntity<List<ConcertDto>>> getConcertByVenue(@PathVariable Venue venue){
+        return concertService.getConcertByVenue(venue)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @PutMapping("/update")
-    public ResponseEntity<ConcertDto> updateConcert(@RequestBody ConcertDto concertDto){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.updateConcert(concertDto));
+    public Mono<ResponseEntity<ConcertDto>> updateConcert(@RequestBody ConcertDto concertDto){
+        return concertService.updateConcert(concertDto)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @DeleteMapping("/delete/{concertId}")
-    public ResponseEntity<String> deleteConcert(@PathVariable Integer concertId){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(concertService.deleteConcert(concertId));
+    public Mono<ResponseEntity<String>> deleteConcert(@PathVariable Integer concertId){
+        return concertService.deleteConcert(concertId)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 }
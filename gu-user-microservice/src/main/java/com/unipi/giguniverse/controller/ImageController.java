@@ -0,0 +1,34 @@
+package com.unipi.giguniverse.controller;
+
+import com.unipi.giguniverse.model.ImageBlob;
+import com.unipi.giguniverse.service.ImageStoreService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@Slf4j
+@RequestMapping("api/image")
+@AllArgsConstructor
+public class ImageController {
+
+    private final ImageStoreService imageStoreService;
+
+    //A hash always names the same bytes, clients can keep the response for a long time
+    @GetMapping("/{hash}")
+    public ResponseEntity<byte[]> getImage(@PathVariable String hash){
+        ImageBlob image = imageStoreService.getImage(hash);
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .eTag(hash)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate())
+                .contentType(MediaType.parseMediaType(image.getContentType()))
+                .body(image.getData());
+    }
+}
@@ -0,0 +1,45 @@
+package com.unipi.giguniverse.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ Listings are keyset pages. A full page carries Link: <...?after=last&limit=size>; rel="next",
+ so clients see that the listing goes on instead of taking the first page for all of it.
+ */
+final class NextPageLink {
+
+    //Same page sizes as the ticket, concert and venue services
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private NextPageLink(){
+    }
+
+    static int pageSize(Integer limit){
+        return limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    //Read on the request thread, mapping a Mono may run elsewhere
+    static UriComponentsBuilder currentRequest(){
+        return ServletUriComponentsBuilder.fromCurrentRequest();
+    }
+
+    static <T> ResponseEntity<List<T>> page(UriComponentsBuilder request, List<T> page, int pageSize,
+                                            Function<T, Object> cursor){
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if(!page.isEmpty() && page.size() >= pageSize){
+            String next = request.cloneBuilder()
+                    .replaceQueryParam("after", cursor.apply(page.get(page.size() - 1)))
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header("Link", "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page);
+    }
+}
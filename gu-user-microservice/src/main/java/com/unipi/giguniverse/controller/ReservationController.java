@@ -7,6 +7,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -19,37 +20,42 @@ public class ReservationController {
     private final ReservationService reservationService;
 
     @GetMapping("/{id}")
-    public ResponseEntity<ReservationDto> getReservationById(@PathVariable Integer id){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(reservationService.getReservationById(id));
+    public Mono<ResponseEntity<ReservationDto>> getReservationById(@PathVariable Integer id){
+        return reservationService.getReservationById(id)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @PostMapping
-    public ResponseEntity<ReservationDto> addReservation(@RequestBody ReservationDto reservationDto){
-        return ResponseEntity
-                .status(HttpStatus.CREATED)
-                .body(reservationService.addReservation(reservationDto));
+    public Mono<ResponseEntity<ReservationDto>> addReservation(@RequestBody ReservationDto reservationDto){
+        return reservationService.addReservation(reservationDto)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(body));
     }
 
     @GetMapping
-    public ResponseEntity<List<ReservationDto>> getAllReservationsByLoggedInOwner(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(reservationService.getReservationsByLoggedInOwner());
+    public Mono<ResponseEntity<List<ReservationDto>>> getAllReservationsByLoggedInOwner(){
+        return reservationService.getReservationsByLoggedInOwner()
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @PutMapping("/update")
-    public ResponseEntity<ReservationDto> updateReservation(@RequestBody ReservationDto reservationDto){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(reservationService.updateReservation(reservationDto));
+    public Mono<ResponseEntity<ReservationDto>> updateReservation(@RequestBody ReservationDto reservationDto){
+        return reservationService.updateReservation(reservationDto)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @DeleteMapping("/delete/{reservationId}")
-    public ResponseEntity<String> deleteReservation(@PathVariable Integer reservationId){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(reservationService.deleteReservation(reservationId));
+    public Mono<ResponseEntity<String>> deleteReservation(@PathVariable Integer reservationId){
+        return reservationService.deleteReservation(reservationId)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 }
@@ -1,14 +1,22 @@
 package com.unipi.giguniverse.controller;
 
 import com.unipi.giguniverse.dto.TicketDto;
+import com.unipi.giguniverse.dto.TicketScanDto;
 import com.unipi.giguniverse.model.Ticket;
 import com.unipi.giguniverse.service.TicketService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import javax.transaction.Transactional;
 import java.util.List;
@@ -30,71 +38,135 @@ public class TicketController {
 //    }
 
     @PostMapping
-    public ResponseEntity<List<TicketDto>> addTickets(@RequestBody List<TicketDto> ticketDtos){
-        return ResponseEntity
-                .status(HttpStatus.CREATED)
-                .body(ticketService.addTickets(ticketDtos));
+    public Mono<ResponseEntity<List<TicketDto>>> addTickets(@RequestBody List<TicketDto> ticketDtos){
+        return ticketService.addTickets(ticketDtos)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(body));
     }
 
     @GetMapping
-    public ResponseEntity<List<TicketDto>> getAllTickets(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.getAllTickets());
+    public Mono<ResponseEntity<List<TicketDto>>> getAllTickets(@RequestParam(required = false) String after,
+                                                               @RequestParam(required = false) Integer limit){
+        UriComponentsBuilder request = NextPageLink.currentRequest();
+        return ticketService.getAllTickets(after, limit)
+                .map(body -> NextPageLink.page(request, body, NextPageLink.pageSize(limit), TicketDto::getTicketId));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<TicketDto> getTicketById(@PathVariable String id){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.getTicketById(id));
+    public Mono<ResponseEntity<TicketDto>> getTicketById(@PathVariable String id){
+        return ticketService.getTicketById(id)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
+    }
+
+    @GetMapping(value = "/{id}/qr.png", produces = MediaType.IMAGE_PNG_VALUE)
+    public Mono<ResponseEntity<byte[]>> getTicketQRCode(@PathVariable String id){
+        return ticketService.getTicketQRCode(id)
+                .map(qrCode -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .headers(headers -> {
+                            headers.setETag(qrCode.getHeaders().getETag());
+                            headers.setCacheControl(qrCode.getHeaders().getCacheControl());
+                        })
+                        .contentType(MediaType.IMAGE_PNG)
+                        .body(qrCode.getBody()));
     }
 
     @GetMapping("/loggedin")
-    public ResponseEntity<List<TicketDto>> getTicketsByLoggedInUser(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.getTicketsByLoggedInUser());
+    public Mono<ResponseEntity<List<TicketDto>>> getTicketsByLoggedInUser(){
+        return ticketService.getTicketsByLoggedInUser()
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @GetMapping("/concert/{id}")
-    public ResponseEntity<List<TicketDto>> getTicketsByConcertID(@PathVariable Integer id){
+    public Mono<ResponseEntity<List<TicketDto>>> getTicketsByConcertID(@PathVariable Integer id,
+                                                                       @RequestParam(required = false) String after,
+                                                                       @RequestParam(required = false) Integer limit){
+        UriComponentsBuilder request = NextPageLink.currentRequest();
+        return ticketService.getTicketsByConcertID(id, after, limit)
+                .map(body -> NextPageLink.page(request, body, NextPageLink.pageSize(limit), TicketDto::getTicketId));
+    }
+
+    //Each buffer is written to the response and released, the export is never held in memory
+    @GetMapping(value = "/concert/{id}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportTicketsByConcertID(@PathVariable Integer id){
+        Flux<DataBuffer> export = ticketService.exportTicketsByConcertID(id);
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .body(ticketService.getTicketsByConcertID(id));
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> DataBufferUtils.write(export, out)
+                        .doOnNext(DataBufferUtils::release)
+                        .blockLast());
     }
 
     @GetMapping("/validate/{uuid}")
-    public ResponseEntity<TicketDto> validate(@PathVariable String uuid){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.validateTicket(uuid));
+    public Mono<ResponseEntity<TicketDto>> validate(@PathVariable String uuid){
+        return ticketService.validateTicket(uuid)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
+    }
+
+    @PostMapping("/scan/{uuid}")
+    public Mono<ResponseEntity<TicketScanDto>> scan(@PathVariable String uuid,
+                                                    @RequestParam(required = false) Integer concertId){
+        return ticketService.scanTicket(uuid, concertId)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
+    }
+
+    @GetMapping(value = "/manifest/{concertId}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Mono<ResponseEntity<byte[]>> getManifest(@PathVariable Integer concertId,
+                                                    @RequestParam(defaultValue = "0") long since){
+        return ticketService.getManifest(concertId, since)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .body(body));
+    }
+
+    @GetMapping(value = "/manifest/key", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Mono<ResponseEntity<byte[]>> getManifestKey(){
+        return ticketService.getManifestKey()
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .body(body));
     }
 
     @GetMapping("/ticketHolderEmail/{ticketHolderEmail}")
-    public ResponseEntity<List<TicketDto>> getTicketByEmail(@PathVariable String ticketHolderEmail){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.getTicketsByTicketHolderEmail(ticketHolderEmail));
+    public Mono<ResponseEntity<List<TicketDto>>> getTicketByEmail(@PathVariable String ticketHolderEmail){
+        return ticketService.getTicketsByTicketHolderEmail(ticketHolderEmail)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @PutMapping("/update")
-    public ResponseEntity<TicketDto> updateTicket(@RequestBody TicketDto ticketDto){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.updateTicket(ticketDto));
+    public Mono<ResponseEntity<TicketDto>> updateTicket(@RequestBody TicketDto ticketDto){
+        return ticketService.updateTicket(ticketDto)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @DeleteMapping("/delete/{ticketId}")
-    public ResponseEntity<String> deleteTicket(@PathVariable String ticketId){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.deleteTicket(ticketId));
+    public Mono<ResponseEntity<String>> deleteTicket(@PathVariable String ticketId){
+        return ticketService.deleteTicket(ticketId)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
   /*  @GetMapping("/attendants/{attendant}")
-    public ResponseEntity<List<TicketDto>> getTicketByAttendant(@PathVariable Attendant attendant){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(ticketService.getTicketsByAttendant(attendant));
+    public Mono<ResponseEntity<List<TicketDto>>> getTicketByAttendant(@PathVariable Attendant attendant){
+        return ticketService.getTicketsByAttendant(attendant)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }*/
 }
@@ -16,6 +16,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
@@ -32,51 +34,58 @@ public class VenueController {
     private final VenueService venueService;
 
     @PostMapping
-    public ResponseEntity<VenueDto> addVenue(@RequestBody VenueDto venueDto){
-        return ResponseEntity
-                .status(HttpStatus.CREATED)
-                .body(venueService.addVenue(venueDto));
+    public Mono<ResponseEntity<VenueDto>> addVenue(@RequestBody VenueDto venueDto){
+        return venueService.addVenue(venueDto)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(body));
     }
 
     @GetMapping("/all")
-    public ResponseEntity<List<VenueDto>> getAllVenues(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(venueService.getAllVenues());
+    public Mono<ResponseEntity<List<VenueDto>>> getAllVenues(@RequestParam(required = false) Integer after,
+                                                             @RequestParam(required = false) Integer limit){
+        UriComponentsBuilder request = NextPageLink.currentRequest();
+        return venueService.getAllVenues(after, limit)
+                .map(body -> NextPageLink.page(request, body, NextPageLink.pageSize(limit), VenueDto::getVenueId));
     }
 
     @GetMapping
-    public ResponseEntity<List<VenueDto>> getVenuesByLoggedInOwner(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(venueService.getVenuesByLoggedInOwner());
+    public Mono<ResponseEntity<List<VenueDto>>> getVenuesByLoggedInOwner(){
+        return venueService.getVenuesByLoggedInOwner()
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<VenueDto> getVenue(@PathVariable Integer id){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(venueService.getVenueById(id));
+    public Mono<ResponseEntity<VenueDto>> getVenue(@PathVariable Integer id){
+        return venueService.getVenueById(id)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @GetMapping("/city/{city}")
-    public ResponseEntity<List<VenueDto>> getAllVenuesByCity(@PathVariable String city){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(venueService.getVenueByCity(city));
+    public Mono<ResponseEntity<List<VenueDto>>> getAllVenuesByCity(@PathVariable String city){
+        return venueService.getVenueByCity(city)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @PutMapping("/update")
-    public ResponseEntity<VenueDto> updateVenue(@RequestBody VenueDto venueDto){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(venueService.updateVenue(venueDto));
+    public Mono<ResponseEntity<VenueDto>> updateVenue(@RequestBody VenueDto venueDto){
+        return venueService.updateVenue(venueDto)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 
     @DeleteMapping("/delete/{venueId}")
-    public ResponseEntity<String> deleteVenue(@PathVariable Integer venueId){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(venueService.deleteVenue(venueId));
+    public Mono<ResponseEntity<String>> deleteVenue(@PathVariable Integer venueId){
+        return venueService.deleteVenue(venueId)
+                .map(body -> ResponseEntity
+                        .status(HttpStatus.OK)
+                        .body(body));
     }
 }
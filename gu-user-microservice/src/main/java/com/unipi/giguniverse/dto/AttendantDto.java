@@ -18,6 +18,8 @@ public class AttendantDto {
     private String lastname;
     private String email;
     private Instant created;
+    //Base64 upload, responses carry imageUrl instead
     private String image;
+    private String imageUrl;
 
 }
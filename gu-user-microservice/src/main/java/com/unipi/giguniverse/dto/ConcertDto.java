@@ -9,7 +9,7 @@ import javax.validation.constraints.NotBlank;
 import java.util.Date;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class ConcertDto {
@@ -28,4 +28,6 @@ public class ConcertDto {
     @NotBlank(message = "Number of Tickets Required")
     private Integer ticketNumber;
     private String image;
+    private String imageUrl;
+    private String thumbnailUrl;
 }
\ No newline at end of file
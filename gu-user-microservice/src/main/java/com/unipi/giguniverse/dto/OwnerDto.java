@@ -20,6 +20,8 @@ public class OwnerDto {
     private String companyName;
     private String vat;
     private Instant created;
+    //Base64 upload, responses carry imageUrl instead
     private String image;
+    private String imageUrl;
 
 }
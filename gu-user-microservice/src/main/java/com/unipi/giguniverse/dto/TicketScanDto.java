@@ -0,0 +1,27 @@
+package com.unipi.giguniverse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketScanDto {
+
+    public enum Status {
+        VALID,
+        ALREADY_USED,
+        INVALID
+    }
+
+    private String ticketId;
+    private Integer concertId;
+    private String ticketHolder;
+    private Status status;
+    private Date checkInDate;
+}
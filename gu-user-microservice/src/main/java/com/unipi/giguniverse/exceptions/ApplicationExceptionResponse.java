@@ -1,10 +1,12 @@
 package com.unipi.giguniverse.exceptions;
 
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 @ControllerAdvice
@@ -15,4 +17,23 @@ public class ApplicationExceptionResponse extends ResponseEntityExceptionHandler
     public ResponseEntity<String> handleExceptions(ApplicationException applicationException){
         return new ResponseEntity(applicationException.getMessage(), new HttpHeaders(), HttpStatus.BAD_REQUEST);
     }
+
+    @ExceptionHandler({ThrottledException.class})
+    public ResponseEntity<String> handleThrottled(ThrottledException throttledException){
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(throttledException.getRetryAfterSeconds()));
+        return new ResponseEntity<>(throttledException.getMessage(), headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    //Downstream errors keep their status and body, e.g. 400 "Not enough tickets" from the ticket service
+    @ExceptionHandler({WebClientResponseException.class})
+    public ResponseEntity<String> handleDownstream(WebClientResponseException downstreamException){
+        return new ResponseEntity<>(downstreamException.getResponseBodyAsString(), new HttpHeaders(),
+                downstreamException.getStatusCode());
+    }
+
+    @ExceptionHandler({CallNotPermittedException.class})
+    public ResponseEntity<String> handleCircuitOpen(CallNotPermittedException callNotPermittedException){
+        return new ResponseEntity<>(callNotPermittedException.getMessage(), new HttpHeaders(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
 }
@@ -0,0 +1,16 @@
+package com.unipi.giguniverse.exceptions;
+
+//Answered with 429 and a Retry-After header by ApplicationExceptionResponse
+public class ThrottledException extends ApplicationException {
+
+    private final long retryAfterSeconds;
+
+    public ThrottledException(String exMessage, long retryAfterSeconds){
+        super(exMessage);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds(){
+        return retryAfterSeconds;
+    }
+}
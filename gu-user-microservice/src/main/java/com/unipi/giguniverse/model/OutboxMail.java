@@ -0,0 +1,42 @@
+package com.unipi.giguniverse.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+import static javax.persistence.GenerationType.IDENTITY;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Builder
+public class OutboxMail {
+
+    public enum Status {
+        PENDING,
+        SENT,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = IDENTITY)
+    private Long mailId;
+    private String recipient;
+    private String subject;
+    //Rendered HTML, the tickets it was built from may be gone by the time it is sent
+    @Lob
+    private String body;
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    private int attempts;
+    private Instant created;
+    private Instant nextAttempt;
+    private Instant sent;
+    @Column(length = 1000)
+    private String lastError;
+}
@@ -31,7 +31,9 @@ public class User {
     protected String password;
     protected Instant created;
     protected Boolean isEnabled = false;
+    //Legacy inline Base64 image, see ImageStoreService.moveInlineImage
     @Lob
     protected String image;
+    protected String imageHash;
 }
 
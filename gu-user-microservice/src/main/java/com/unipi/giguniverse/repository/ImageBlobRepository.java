@@ -0,0 +1,7 @@
+package com.unipi.giguniverse.repository;
+
+import com.unipi.giguniverse.model.ImageBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+}
@@ -1,6 +1,8 @@
 package com.unipi.giguniverse.security;
 
 import com.google.common.collect.Sets;
+import com.unipi.giguniverse.model.Owner;
+import com.unipi.giguniverse.model.User;
 import lombok.AllArgsConstructor;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -35,4 +37,9 @@ public enum ApplicationUserRole{
         return permissions;
     }
 
+    //Owners and attendants share the user table, the subclass decides the role
+    public static ApplicationUserRole of(User user){
+        return user instanceof Owner ? OWNER : ATTENDANT;
+    }
+
 }
@@ -0,0 +1,95 @@
+package com.unipi.giguniverse.security;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import com.unipi.giguniverse.exceptions.ThrottledException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ BCrypt with a configurable work factor (password.bcrypt.strength) that runs every hash on the passwordHashExecutor.
+ upgradeEncoding reports hashes made with any other factor, so DaoAuthenticationProvider rehashes them on the next
+ successful login through UserDetailsServiceImpl.updatePassword. Hash time is published as the password.hash timer
+ tagged operation=encode|matches.
+ */
+@Component
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final BCryptPasswordEncoder delegate;
+    private final int strength;
+    private final ExecutorService passwordHashExecutor;
+    private final long timeoutMillis;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public BoundedPasswordEncoder(ExecutorService passwordHashExecutor,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${password.bcrypt.strength:10}") int strength,
+                                  @Value("${password.hashing.timeout-ms:5000}") long timeoutMillis){
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.passwordHashExecutor = passwordHashExecutor;
+        this.timeoutMillis = timeoutMillis;
+        this.encodeTimer = Timer.builder("password.hash").tag("operation", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("password.hash").tag("operation", "matches").register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword){
+        return hash(() -> delegate.encode(rawPassword), encodeTimer);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword){
+        return hash(() -> delegate.matches(rawPassword, encodedPassword), matchesTimer);
+    }
+
+    //Rehash when the factor changed in either direction, BCryptPasswordEncoder only upgrades weaker hashes
+    @Override
+    public boolean upgradeEncoding(String encodedPassword){
+        if(encodedPassword == null) return false;
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    private <T> T hash(Callable<T> task, Timer timer){
+        Future<T> future;
+        try {
+            future = passwordHashExecutor.submit(() -> timer.recordCallable(task));
+        }
+        catch (RejectedExecutionException e) {
+            throw new ThrottledException("Too many login attempts in progress, try again shortly", 1);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ThrottledException("Too many login attempts in progress, try again shortly", 1);
+        }
+        catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new ApplicationException("Password hashing failed", e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ApplicationException("Password hashing interrupted", e);
+        }
+    }
+}
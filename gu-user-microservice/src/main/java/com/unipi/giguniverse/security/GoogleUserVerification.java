@@ -3,39 +3,32 @@ package com.unipi.giguniverse.security;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
 import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.User;
-import org.springframework.beans.factory.annotation.Value;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
-import lombok.NoArgsConstructor;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.util.Collections;
 
-@NoArgsConstructor
+@Slf4j
 @Component
+@AllArgsConstructor
 public class GoogleUserVerification{
 
-    @Value("${google.ClientId}")
-    private String googleClientId;
-    //private User user;
+    //Shared, see GoogleVerifierConfig
+    private final GoogleIdTokenVerifier verifier;
+    private final GooglePublicKeysManager googlePublicKeysManager;
 
     public Boolean verifyGoogleIdToken(String idTokenString){
 
-        GoogleIdTokenVerifier verifier = new GoogleIdTokenVerifier.Builder(new NetHttpTransport(), new JacksonFactory())
-                // Specify the CLIENT_ID of the app that accesses the backend:
-                .setAudience(Collections.singletonList(googleClientId))
-                // Or, if multiple clients access the backend:
-                //.setAudience(Arrays.asList(CLIENT_ID_1, CLIENT_ID_2, CLIENT_ID_3))
-                .build();
-
         try {
             GoogleIdToken idToken = verifier.verify(idTokenString);
             if (idToken != null){
@@ -64,15 +57,24 @@ public class GoogleUserVerification{
 
             }
             else {
-                System.out.println("Invalid ID token."); //TODO:Remove sout
                 throw new ApplicationException("Invalid ID token");
             }
 
         } catch (GeneralSecurityException | IOException e) {
-            e.printStackTrace();
+            log.warn("Google ID token verification failed", e);
             throw new ApplicationException("Invalid ID token");
         }
         return true;
     }
 
+    //getPublicKeys() downloads again only within five minutes of the Cache-Control expiry, so logins never wait on it
+    @Scheduled(fixedDelayString = "${google.certs-refresh-ms:60000}")
+    public void refreshPublicKeys(){
+        try {
+            googlePublicKeysManager.getPublicKeys();
+        }
+        catch (GeneralSecurityException | IOException e) {
+            log.warn("Failed to refresh Google public keys", e);
+        }
+    }
 }
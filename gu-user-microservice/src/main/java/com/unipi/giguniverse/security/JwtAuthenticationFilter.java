@@ -1,8 +1,10 @@
 package com.unipi.giguniverse.security;
 
+import io.jsonwebtoken.Claims;
 import lombok.AllArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -22,6 +24,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtProvider jwtProvider;
     private final UserDetailsService userDetailsService;
+    private final TokenRevocationCheck tokenRevocationCheck;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
@@ -29,23 +32,42 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String jwt = getJwtFromRequest(request);
 
-        if(StringUtils.hasText(jwt) && jwtProvider.validateToken(jwt)){
+        if(StringUtils.hasText(jwt)){
 
-            String username = jwtProvider.getUsernameFromJwt(jwt);
+            //Verified once, repeated requests with the same token hit the claims cache
+            Claims claims = jwtProvider.parseToken(jwt);
 
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username); //username is the email
+            String username = claims.getSubject(); //username is the email
 
-            UsernamePasswordAuthenticationToken authenticationToken =
-                    new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+            if(!tokenRevocationCheck.isRevoked(username)){
+                UserDetails userDetails = getUserDetails(claims);
 
-            authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                UsernamePasswordAuthenticationToken authenticationToken =
+                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
 
-            SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+                authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+                SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+            }
         }
         //pass the request to the next filter
         filterChain.doFilter(request,response);
     }
 
+    //Built from the verified claims, only tokens issued before the role claim existed still load the user
+    private UserDetails getUserDetails(Claims claims) {
+        String role = claims.get(JwtProvider.ROLE_CLAIM, String.class);
+        if(role == null){
+            return userDetailsService.loadUserByUsername(claims.getSubject());
+        }
+        //Same principal type as UserDetailsServiceImpl, the password is not needed after authentication
+        return User.builder()
+                .username(claims.getSubject())
+                .password("")
+                .authorities(ApplicationUserRole.valueOf(role).getGrantedAuthorities())
+                .build();
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
 
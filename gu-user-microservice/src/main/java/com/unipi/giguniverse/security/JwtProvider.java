@@ -1,113 +1,234 @@
 package com.unipi.giguniverse.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.unipi.giguniverse.exceptions.ApplicationException;
-import com.unipi.giguniverse.exceptions.ApplicationExceptionResponse;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.userdetails.User;
+import com.unipi.giguniverse.model.User;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
+import java.security.interfaces.RSAPublicKey;
 import java.sql.Date;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static io.jsonwebtoken.Jwts.parser;
 import static java.util.Date.from;
 
+/**
+ Signs and verifies the gateway's JWTs. Keys are read from the keystore once at startup: tokens are signed with
+ jwt.signing-key-id and carry it as the kid header, every certificate in the keystore verifies tokens with its
+ alias as kid, so a new key can be added and made the signing key while tokens of the old one stay valid.
+ A token is verified once, its claims are then cached under the token's SHA-256 until the token expires.
+ */
 @Service
 public class JwtProvider {
 
-    private KeyStore keyStore;
-    @Value("${jwt.expiration.time}")
-    private Long jwtExpirationInMillis;
+    //Role of the subject, JwtAuthenticationFilter builds the authorities from it without loading the user
+    public static final String ROLE_CLAIM = "role";
+    //Read by the downstream services in place of a userId in the URL
+    public static final String USER_ID_CLAIM = "userId";
+    //Ticket QR tokens of the ticket service (TicketTokenProvider), never accepted as bearer tokens
+    public static final String TICKET_TOKEN_TYPE = "ticket";
+    public static final String TICKET_AUDIENCE = "giguniverse-gate";
+
+    private final Long jwtExpirationInMillis;
+    private final String signingKeyId;
+    private final Cache<String, Claims> verifiedTokens;
+    private final SigningKeyResolver signingKeyResolver = new SigningKeyResolverAdapter() {
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            if(!isAccessToken(header, claims)) throw new ApplicationException("Authentication Failed");
+            return getPublicKey(header.getKeyId());
+        }
+    };
+    private volatile PrivateKey signingKey;
+    private volatile Map<String, PublicKey> verificationKeys = Collections.emptyMap();
+
+    public JwtProvider(MeterRegistry meterRegistry,
+                       @Value("${jwt.expiration.time}") Long jwtExpirationInMillis,
+                       @Value("${jwt.signing-key-id:giguniverse}") String signingKeyId,
+                       @Value("${jwt.claims-cache.max-size:10000}") long claimsCacheSize) {
+        this.jwtExpirationInMillis = jwtExpirationInMillis;
+        this.signingKeyId = signingKeyId;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(claimsCacheSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        return untilExpiration(claims);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return untilExpiration(claims);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwtClaims");
+    }
 
     @PostConstruct
     public void init() {
         try {
-            keyStore = KeyStore.getInstance("JKS");
+            KeyStore keyStore = KeyStore.getInstance("JKS");
             InputStream resourceAsStream = getClass().getResourceAsStream("/giguniverse.jks");
             keyStore.load(resourceAsStream, "giguniverse".toCharArray());
+
+            Map<String, PublicKey> publicKeys = new HashMap<>();
+            for(String alias : Collections.list(keyStore.aliases())){
+                Certificate certificate = keyStore.getCertificate(alias);
+                if(certificate != null) publicKeys.put(alias, certificate.getPublicKey());
+            }
+            useKeys(signingKeyId, (PrivateKey) keyStore.getKey(signingKeyId, "giguniverse".toCharArray()), publicKeys);
         }
-        catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException e) {
+        catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException
+                | UnrecoverableKeyException e) {
             throw new ApplicationException("Exception occurred while loading keystore", e);
         }
-
     }
 
-    public String generateToken(Authentication authentication) {
-        org.springframework.security.core.userdetails.User principal = (User) authentication.getPrincipal();
-        return Jwts.builder()
-                .setSubject(principal.getUsername())
-                .setIssuedAt(from(Instant.now()))
-                .signWith(getPrivateKey())
-                .setExpiration(Date.from(Instant.now().plusMillis(jwtExpirationInMillis)))
-                .compact();
+    //Replaces the keys read from the keystore, the signing key's public half must be among the verification keys
+    public void useKeys(String keyId, PrivateKey privateKey, Map<String, PublicKey> publicKeys) {
+        if(privateKey == null || !publicKeys.containsKey(keyId)){
+            throw new ApplicationException("Exception occurred! No key pair for signing key id: " + keyId);
+        }
+        this.signingKey = privateKey;
+        this.verificationKeys = Map.copyOf(publicKeys);
+        this.verifiedTokens.invalidateAll();
     }
 
-    public String generateTokenForGoogleSignIn(Authentication authentication) {
-        com.unipi.giguniverse.model.User principal = (com.unipi.giguniverse.model.User) authentication.getPrincipal();
+    //Issued for the stored user after password or Google login, the claims are all the services need to know
+    public String generateToken(User user) {
         return Jwts.builder()
-                .setSubject(principal.getEmail())
+                .setHeaderParam(JwsHeader.KEY_ID, signingKeyId)
+                .setSubject(user.getEmail())
+                .claim(ROLE_CLAIM, ApplicationUserRole.of(user).name())
+                .claim(USER_ID_CLAIM, user.getUserId())
                 .setIssuedAt(from(Instant.now()))
-                .signWith(getPrivateKey())
+                .signWith(signingKey)
                 .setExpiration(Date.from(Instant.now().plusMillis(jwtExpirationInMillis)))
                 .compact();
     }
 
-//    public String generateTokenWithUserName(String username) {
-//        return Jwts.builder()
-//                .setSubject(username)
-//                .setIssuedAt(from(Instant.now()))
-//                .signWith(getPrivateKey())
-//                .setExpiration(Date.from(Instant.now().plusMillis(jwtExpirationInMillis)))
-//                .compact();
-//    }
-
-    private PrivateKey getPrivateKey() {
-        try {
-            return (PrivateKey) keyStore.getKey("giguniverse", "giguniverse".toCharArray());
-        }
-        catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
-            throw new ApplicationException("Exception occurred while retrieving public key from keystore", e);
-        }
+    public boolean validateToken(String jwt) {
+        parseToken(jwt);
+        return true;
     }
 
-    public boolean validateToken(String jwt) {
+    //Verifies the signature and expiration once per token, later calls are served from the cache
+    public Claims parseToken(String jwt) {
+        String tokenHash = hash(jwt);
+        Claims claims = verifiedTokens.getIfPresent(tokenHash);
+        if(claims != null) return claims;
         try{
-            parser().setSigningKey(getPublicKey()).parseClaimsJws(jwt);
-            return true;
+            claims = parser().setSigningKeyResolver(signingKeyResolver).parseClaimsJws(jwt).getBody();
         }
         catch (ExpiredJwtException e){
             throw new ApplicationException("Authentication Failed");
         }
+        verifiedTokens.put(tokenHash, claims);
+        return claims;
     }
 
-    private PublicKey getPublicKey() {
-        try {
-            return keyStore.getCertificate("giguniverse").getPublicKey();
-        }
-        catch (KeyStoreException e) {
-            throw new ApplicationException("Exception occurred while retrieving public key from keystore", e);
+    //Login tokens always expire, ticket tokens are typed and addressed to the gate
+    private static boolean isAccessToken(JwsHeader header, Claims claims) {
+        return !TICKET_TOKEN_TYPE.equals(header.getType())
+                && !TICKET_AUDIENCE.equals(claims.getAudience())
+                && claims.getExpiration() != null;
+    }
+
+    //Tokens issued before key ids were added have no kid and are verified with the signing key
+    private PublicKey getPublicKey(String keyId) {
+        PublicKey publicKey = verificationKeys.get(keyId != null ? keyId : signingKeyId);
+        if(publicKey == null){
+            throw new ApplicationException("Exception occurred! Unknown key id: " + keyId);
         }
+        return publicKey;
+    }
+
+    public Map<String, PublicKey> getVerificationKeys() {
+        return verificationKeys;
+    }
+
+    //RFC 7517 key set of the RSA verification keys, served at /api/auth/jwks for the downstream services
+    public Map<String, Object> getJwks() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        List<Map<String, String>> keys = new ArrayList<>();
+        verificationKeys.forEach((keyId, publicKey) -> {
+            if(!(publicKey instanceof RSAPublicKey)) return;
+            RSAPublicKey rsaPublicKey = (RSAPublicKey) publicKey;
+            keys.add(Map.of(
+                    "kty", "RSA",
+                    "use", "sig",
+                    "kid", keyId,
+                    "n", encoder.encodeToString(unsigned(rsaPublicKey.getModulus())),
+                    "e", encoder.encodeToString(unsigned(rsaPublicKey.getPublicExponent()))));
+        });
+        return Map.of("keys", keys);
+    }
+
+    //Big endian magnitude without the sign byte BigInteger adds when the top bit is set
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        return bytes[0] == 0 && bytes.length > 1 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
     }
 
     public String getUsernameFromJwt(String token) {
-        Claims claims = parser()
-                .setSigningKey(getPublicKey())
-                .parseClaimsJws(token)
-                .getBody();
+        return parseToken(token).getSubject();
+    }
 
-        return claims.getSubject();
+    public Claims getClaimsFromJwt(String token) {
+        return parseToken(token);
     }
 
     public Long getJwtExpirationInMillis() {
         return jwtExpirationInMillis;
     }
+
+    private static long untilExpiration(Claims claims) {
+        if(claims.getExpiration() == null) return 0;
+        long millis = claims.getExpiration().getTime() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+    }
+
+    private static String hash(String jwt) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(jwt.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new ApplicationException("Exception occurred! SHA-256 is not available", e);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package com.unipi.giguniverse.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.unipi.giguniverse.exceptions.ThrottledException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ Counts failed logins per account and per client IP and refuses further attempts once either limit is reached,
+ before any BCrypt work is spent on them. The count resets login.throttle.window-seconds after the first failure,
+ and a successful login clears the account count. Refusals are counted in login.throttled tagged reason=account|ip.
+ */
+@Component
+public class LoginThrottle {
+
+    private final int maxAccountFailures;
+    private final int maxIpFailures;
+    private final long windowSeconds;
+    private final Cache<String, AtomicInteger> accountFailures;
+    private final Cache<String, AtomicInteger> ipFailures;
+    private final Counter accountThrottled;
+    private final Counter ipThrottled;
+
+    public LoginThrottle(MeterRegistry meterRegistry,
+                         @Value("${login.throttle.max-account-failures:5}") int maxAccountFailures,
+                         @Value("${login.throttle.max-ip-failures:20}") int maxIpFailures,
+                         @Value("${login.throttle.window-seconds:900}") long windowSeconds,
+                         @Value("${login.throttle.max-size:100000}") long maxSize){
+        this.maxAccountFailures = maxAccountFailures;
+        this.maxIpFailures = maxIpFailures;
+        this.windowSeconds = windowSeconds;
+        this.accountFailures = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(windowSeconds))
+                .build();
+        this.ipFailures = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(windowSeconds))
+                .build();
+        this.accountThrottled = Counter.builder("login.throttled").tag("reason", "account").register(meterRegistry);
+        this.ipThrottled = Counter.builder("login.throttled").tag("reason", "ip").register(meterRegistry);
+    }
+
+    public void checkAllowed(String email, String clientIp){
+        if(failures(accountFailures, account(email)) >= maxAccountFailures){
+            accountThrottled.increment();
+            throw new ThrottledException("Too many failed login attempts, try again later", windowSeconds);
+        }
+        if(failures(ipFailures, clientIp) >= maxIpFailures){
+            ipThrottled.increment();
+            throw new ThrottledException("Too many failed login attempts, try again later", windowSeconds);
+        }
+    }
+
+    public void loginFailed(String email, String clientIp){
+        increment(accountFailures, account(email));
+        increment(ipFailures, clientIp);
+    }
+
+    public void loginSucceeded(String email){
+        if(email != null) accountFailures.invalidate(account(email));
+    }
+
+    private static String account(String email){
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int failures(Cache<String, AtomicInteger> cache, String key){
+        if(key == null) return 0;
+        AtomicInteger count = cache.getIfPresent(key);
+        return count == null ? 0 : count.get();
+    }
+
+    private static void increment(Cache<String, AtomicInteger> cache, String key){
+        if(key != null) cache.get(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+}
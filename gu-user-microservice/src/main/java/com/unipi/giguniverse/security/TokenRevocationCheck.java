@@ -0,0 +1,43 @@
+package com.unipi.giguniverse.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.unipi.giguniverse.model.User;
+import com.unipi.giguniverse.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ Optional check that the subject of a valid JWT still exists and is enabled (jwt.revocation-check.enabled).
+ The answer is cached per email for jwt.revocation-check.ttl-seconds, so a deleted or disabled account loses
+ access within that window while authenticated requests stay off the database.
+ */
+@Component
+public class TokenRevocationCheck {
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final Cache<String, Boolean> activeUsers;
+
+    public TokenRevocationCheck(UserRepository userRepository,
+                                @Value("${jwt.revocation-check.enabled:false}") boolean enabled,
+                                @Value("${jwt.revocation-check.ttl-seconds:60}") long ttlSeconds,
+                                @Value("${jwt.revocation-check.max-size:100000}") long maxSize){
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.activeUsers = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    public boolean isRevoked(String email){
+        if(!enabled) return false;
+        return !activeUsers.get(email, key -> userRepository.findByEmail(key)
+                .map(User::getIsEnabled)
+                .map(Boolean.TRUE::equals)
+                .orElse(false));
+    }
+}
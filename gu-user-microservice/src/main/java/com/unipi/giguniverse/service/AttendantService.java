@@ -22,15 +22,17 @@ import java.util.Optional;
 public class AttendantService {
     private final UserRepository userRepository;
     private final AttendantRepository attendantRepository;
+    private final ImageStoreService imageStoreService;
 
     private AttendantDto mapAttendantToAttendantDto(Attendant attendant){
+        imageStoreService.moveInlineImage(attendant);
         return AttendantDto.builder()
                 .userId(attendant.getUserId())
                 .firstname(attendant.getFirstname())
                 .lastname(attendant.getLastname())
                 .email(attendant.getEmail())
                 .created(attendant.getCreated())
-                .image(attendant.getImage())
+                .imageUrl(imageStoreService.imageUrlOf(attendant))
                 .build();
     }
 
@@ -51,7 +53,8 @@ public class AttendantService {
         Optional<Attendant> existingAttendant =  attendantRepository.findByEmail(principal.getUsername());
         existingAttendant.get().setFirstname(attendantDto.getFirstname());
         existingAttendant.get().setLastname(attendantDto.getLastname());
-        existingAttendant.get().setImage(attendantDto.getImage());
+        //Keep the stored image unless a new one is uploaded
+        if(attendantDto.getImage() != null) existingAttendant.get().setImageHash(imageStoreService.store(attendantDto.getImage()));
         return mapAttendantToAttendantDto(existingAttendant.get());
     }
 
@@ -7,13 +7,16 @@ import com.unipi.giguniverse.repository.UserRepository;
 import com.unipi.giguniverse.repository.VerificationTokenRepository;
 import com.unipi.giguniverse.security.GoogleUserVerification;
 import com.unipi.giguniverse.security.JwtProvider;
+import com.unipi.giguniverse.security.LoginThrottle;
 import lombok.AllArgsConstructor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
@@ -33,9 +36,15 @@ public class AuthService {
     private final JwtProvider jwtProvider;
     //private final RefreshTokenService refreshTokenService;
     private final GoogleUserVerification googleUserVerification;
+    private final LoginThrottle loginThrottle;
 
     public void ownerSignup(RegisterOwnerRequest registerOwnerRequest){
 
+        //Check DB for duplicate account by email, before spending a BCrypt round
+        if(userRepository.existsUserByEmail(registerOwnerRequest.getEmail())){
+            throw new ApplicationException("User already exists");
+        }
+
         User owner = Owner.builder()
                 .firstname(registerOwnerRequest.getFirstname())
                 .lastname(registerOwnerRequest.getLastname())
@@ -47,22 +56,20 @@ public class AuthService {
                 .isEnabled(false)
                 .build();
 
-        //Check DB for duplicate account by email
-        if(!userRepository.existsUserByEmail(registerOwnerRequest.getEmail())){
-
-            userRepository.save(owner); // Save User to DB
+        userRepository.save(owner); // Save User to DB
 
-            String token = generateVerificationToken(owner);
-            mailService.sendActivationEMail(new NotificationEmail("Please Activate your Account",
-                    owner.getEmail(), "http://localhost:8080/api/auth/account-verification/" +token));
-        }
-        else {
-            throw new ApplicationException("User already exists");
-        }
+        String token = generateVerificationToken(owner);
+        mailService.sendActivationEMail(new NotificationEmail("Please Activate your Account",
+                owner.getEmail(), "http://localhost:8080/api/auth/account-verification/" +token));
     }
 
     public void attendantSignup(RegisterAttendantRequest registerAttendantRequest){
 
+        //Check DB for duplicate account by email, before spending a BCrypt round
+        if(userRepository.existsUserByEmail(registerAttendantRequest.getEmail())){
+            throw new ApplicationException("User already exists");
+        }
+
         User attendant = Attendant.builder()
                 .firstname(registerAttendantRequest.getFirstname())
                 .lastname(registerAttendantRequest.getLastname())
@@ -72,18 +79,11 @@ public class AuthService {
                 .isEnabled(false)
                 .build();
 
-        //Check DB for duplicate account by email
-        if(!userRepository.existsUserByEmail(registerAttendantRequest.getEmail())){
+        userRepository.save(attendant); // Save User to DB
 
-            userRepository.save(attendant); // Save User to DB
-
-            String token = generateVerificationToken(attendant);
-            mailService.sendActivationEMail(new NotificationEmail("Please Activate your Account",
-                    attendant.getEmail(), "http://localhost:8080/api/auth/account-verification/" +token));
-        }
-        else {
-            throw new ApplicationException("User already exists");
-        }
+        String token = generateVerificationToken(attendant);
+        mailService.sendActivationEMail(new NotificationEmail("Please Activate your Account",
+                attendant.getEmail(), "http://localhost:8080/api/auth/account-verification/" +token));
     }
 
     //Create Verification token
@@ -121,14 +121,25 @@ public class AuthService {
     }
 
     //Login Method
-    public AuthenticationResponse login(LoginRequest loginRequest){
-        Authentication authenticate = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(loginRequest.getEmail(),
-                loginRequest.getPassword()));
+    //No transaction around the BCrypt wait, a rehash on login saves in its own
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public AuthenticationResponse login(LoginRequest loginRequest, String clientIp){
+        loginThrottle.checkAllowed(loginRequest.getEmail(), clientIp);
+        Authentication authenticate;
+        try {
+            authenticate = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(loginRequest.getEmail(),
+                    loginRequest.getPassword()));
+        }
+        catch (AuthenticationException e) {
+            loginThrottle.loginFailed(loginRequest.getEmail(), clientIp);
+            throw e;
+        }
+        loginThrottle.loginSucceeded(loginRequest.getEmail());
         SecurityContextHolder.getContext().setAuthentication(authenticate);
         //Load current User
         User user = getCurrentUserDetails();
-        String token = jwtProvider.generateToken(authenticate);
+        String token = jwtProvider.generateToken(user);
         return AuthenticationResponse.builder()
                 .firstname(user.getFirstname())
                 .lastname(user.getLastname())
@@ -147,34 +158,27 @@ public class AuthService {
         if(googleUserVerification.verifyGoogleIdToken(googleLoginRequest.getId_token())){
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
             User principal = (User) authentication.getPrincipal();
-            if(userRepository.existsUserByEmail(principal.getEmail())){
-                Optional<User> userOptional = userRepository.findByEmail(principal.getEmail());
-                User googleUser = userOptional.orElseThrow(()->new ApplicationException("User not found"));
-                String token = jwtProvider.generateTokenForGoogleSignIn(authentication);
-                return AuthenticationResponse.builder()
-                        .firstname(googleUser.getFirstname())
-                        .lastname(googleUser.getLastname())
-                        .email(googleUser.getEmail())
-                        .role(googleUser.getClass().getSimpleName())
-                        .id(googleUser.getUserId())
-                        .jwt(token)
+            //First Google login creates the Attendant, the token is verified only once either way
+            User googleUser = userRepository.findByEmail(principal.getEmail())
+                    .orElseGet(()->userRepository.save(Attendant.builder()
+                            .firstname(principal.getFirstname())
+                            .lastname(principal.getLastname())
+                            .email(principal.getEmail())
+                            .password(passwordEncoder.encode(UUID.randomUUID().toString()))
+                            .created(Instant.now())
+                            .isEnabled(true)
+                            .build()));
+            String token = jwtProvider.generateToken(googleUser);
+            return AuthenticationResponse.builder()
+                    .firstname(googleUser.getFirstname())
+                    .lastname(googleUser.getLastname())
+                    .email(googleUser.getEmail())
+                    .role(googleUser.getClass().getSimpleName())
+                    .id(googleUser.getUserId())
+                    .jwt(token)
 //                .refreshToken(refreshTokenService.generateRefreshToken().getToken())
-                        .expiresAt(Instant.now().plusMillis(jwtProvider.getJwtExpirationInMillis()))
-                        .build();
-            }
-            else {
-                User attendant = Attendant.builder()
-                        .firstname(principal.getFirstname())
-                        .lastname(principal.getLastname())
-                        .email(principal.getEmail())
-                        .password(passwordEncoder.encode(UUID.randomUUID().toString()))
-                        .created(Instant.now())
-                        .isEnabled(true)
-                        .build();
-
-                userRepository.save(attendant);// Save User to DB
-                return googleLogin(googleLoginRequest);
-            }
+                    .expiresAt(Instant.now().plusMillis(jwtProvider.getJwtExpirationInMillis()))
+                    .build();
         }
         else return null;
     }
@@ -1,6 +1,11 @@
 package com.unipi.giguniverse.service;
 
+import com.unipi.giguniverse.client.ConcertCatalogCache;
+import com.unipi.giguniverse.client.ConcertClient;
+import com.unipi.giguniverse.client.DownstreamClient;
+import com.unipi.giguniverse.client.SingleFlight;
 import com.unipi.giguniverse.dto.ConcertDto;
+import com.unipi.giguniverse.dto.NotificationJobDto;
 import com.unipi.giguniverse.dto.VenueDto;
 import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.*;
@@ -14,10 +19,11 @@ import io.github.resilience4j.retry.annotation.Retry;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.transaction.Transactional;
@@ -25,6 +31,7 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
 
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 @Service
@@ -41,17 +48,20 @@ public class ConcertService {
     private final String RESERVATION_BASE_URI = "lb://gu-concert-microservice/api/reservation";
     //Resilience4j Configuration
     public static final String CONCERT_MICROSERVICE = "ConcertMicroservice";
+    //Concert ids per availability call, keeps the query string well under server URL limits on large pages
+    private static final int AVAILABILITY_BATCH_SIZE = 100;
 
 //    private final ConcertRepository concertRepository;
 //    private final VenueRepository venueRepository;
     private final VenueService venueService;
-    private final UserRepository userRepository;
     private final ReservationRepository reservationRepository;
 //    private final TicketRepository ticketRepository;
     private final MailService mailService;
     private final QRGeneratorService qrGeneratorService;
     // Microservices version addition
-    private WebClient.Builder webClientBuilder;
+    private final ConcertClient concertClient;
+    private final SingleFlight singleFlight;
+    private final ConcertCatalogCache concertCatalogCache;
 
     // Monolithic Implementation
 //    ConcertDto mapConcertToDto(Concert concert){
@@ -70,32 +80,6 @@ public class ConcertService {
 //                .build();
 //    }
 
-    // Microservices Implementation
-    @Retry(name = CONCERT_MICROSERVICE)
-    @CircuitBreaker(name = CONCERT_MICROSERVICE)
-    ConcertDto mapConcertToDto(Concert concert){
-
-        Mono<Reservation> response = webClientBuilder.build()
-                .get()
-                .uri(RESERVATION_BASE_URI +"/" + concert.getReservation().getReservationId())
-                .retrieve()
-                .bodyToMono(Reservation.class);
-
-        Reservation reservation = response.block();
-
-        return ConcertDto.builder()
-                .concertId(concert.getConcertId())
-                .concertName(concert.getConcertName())
-                .description(concert.getDescription())
-                .venueId(concert.getVenue().getVenueId())
-                .venue(venueService.mapVenueToVenueDto(concert.getVenue()))
-                .date(concert.getDate())
-                .ticketNumber(reservation.getTicketNumber())
-                .ticketPrice(reservation.getTicketPrice())
-                .image(concert.getImage())
-                .build();
-    }
-
     // Monolithic Implementation
 //    private Concert mapConcertDto(ConcertDto concertDto){
 //        return Concert.builder()
@@ -107,18 +91,6 @@ public class ConcertService {
 //                .build();
 //    }
 
-    // Microservices Implementation
-    private Concert mapConcertDto(ConcertDto concertDto){
-
-        return Concert.builder()
-                .concertName(concertDto.getConcertName())
-                .description(concertDto.getDescription())
-                .venue(venueService.mapVenueDtoToVenue(venueService.getVenueById(concertDto.getVenueId())))
-                .date(concertDto.getDate())
-                .image(concertDto.getImage())
-                .build();
-    }
-
 //    public ConcertDto addConcert(ConcertDto concertDto){
 //        concertRepository.save(mapConcertDto(concertDto));
 //        return concertDto;
@@ -135,13 +107,32 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE)
     @CircuitBreaker(name = CONCERT_MICROSERVICE)
-    public ConcertDto getConcertById(Integer id){
-        Mono<ConcertDto> response = webClientBuilder.build()
+    public Mono<ConcertDto> getConcertById(Integer id){
+        //Concurrent lookups of the same concert share one downstream call
+        Mono<ConcertDto> response = concertCatalogCache.get("concert:" +id, () -> singleFlight.execute("concert:" +id,
+                () -> concertClient
+                        .get()
+                        .uri(CONCERT_BASE_URI +"/" +id)
+                        .retrieve()
+                        .bodyToMono(ConcertDto.class)));
+        return withAvailability(response.map(List::of))
+                .map(concerts -> concerts.get(0));
+    }
+
+    // Image bytes from Concert Microservice, If-None-Match is forwarded so an unchanged image costs a 304
+    @RateLimiter(name = CONCERT_MICROSERVICE)
+    @Retry(name = CONCERT_MICROSERVICE)
+    @CircuitBreaker(name = CONCERT_MICROSERVICE)
+    public Mono<ResponseEntity<byte[]>> getConcertImage(Integer id, String size, String ifNoneMatch){
+        Mono<ResponseEntity<byte[]>> response = concertClient
                 .get()
-                .uri(CONCERT_BASE_URI +"/" +id)
+                .uri(CONCERT_BASE_URI +"/" +id +"/image" +(size != null ? "?size=" +size : ""))
+                .headers(headers -> {
+                    if(ifNoneMatch != null) headers.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+                })
                 .retrieve()
-                .bodyToMono(ConcertDto.class);
-        return response.block();
+                .toEntity(byte[].class);
+        return response;
     }
 
     // Monolithic Implementation
@@ -157,17 +148,19 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = CONCERT_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<ConcertDto> getAllConcerts(){
+    public Mono<List<ConcertDto>> getAllConcerts(Integer after, Integer limit){
 
-        Mono<List<ConcertDto>> response = webClientBuilder.build()
+        Mono<List<ConcertDto>> response = concertCatalogCache.get("all:" +after +":" +limit, () -> concertClient
                 .get()
-                .uri(CONCERT_BASE_URI)
+                .uri(UriComponentsBuilder.fromUriString(CONCERT_BASE_URI)
+                        .queryParamIfPresent("after", Optional.ofNullable(after))
+                        .queryParamIfPresent("limit", Optional.ofNullable(limit))
+                        .toUriString())
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<ConcertDto>>() {
-                });
+                }));
 
-        List<ConcertDto> concertDtos = response.block();
-        return concertDtos;
+        return withAvailability(response);
     }
 
     // Monolithic Implementation
@@ -183,17 +176,16 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = CONCERT_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<ConcertDto> getConcertByDate(LocalDate date){
+    public Mono<List<ConcertDto>> getConcertByDate(LocalDate date){
 
-        Mono<List<ConcertDto>> response = webClientBuilder.build()
+        Mono<List<ConcertDto>> response = concertCatalogCache.get("date:" +date, () -> concertClient
                 .get()
                 .uri(CONCERT_BASE_URI +"/date/" +date)
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<ConcertDto>>() {
-                });
+                }));
 
-        List<ConcertDto> concertDtos = response.block();
-        return concertDtos;
+        return withAvailability(response);
     }
 
     // Monolithic Implementation
@@ -209,16 +201,28 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = CONCERT_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<ConcertDto> getConcertByVenue(Venue venue){
-        Mono<List<ConcertDto>> response = webClientBuilder.build()
+    public Mono<List<ConcertDto>> getConcertByVenue(Venue venue){
+        Mono<List<ConcertDto>> response = concertClient
                 .get()
                 .uri(CONCERT_BASE_URI +"/venue/" +venue)
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<ConcertDto>>() {
                 });
 
-        List<ConcertDto> concertDtos = response.block();
-        return concertDtos;
+        return response;
+    }
+
+    @Retry(name = CONCERT_MICROSERVICE, fallbackMethod = "retryLog")
+    @CircuitBreaker(name = CONCERT_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
+    public Mono<List<NotificationJobDto>> getNotificationJobs(Integer concertId){
+        Mono<List<NotificationJobDto>> response = concertClient
+                .get()
+                .uri(CONCERT_BASE_URI +"/" +concertId +"/notifications")
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<NotificationJobDto>>() {
+                });
+
+        return response;
     }
 
     // Monolithic Implementation
@@ -236,17 +240,16 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = CONCERT_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<ConcertDto> getConcertByMonth(LocalDate date){
+    public Mono<List<ConcertDto>> getConcertByMonth(LocalDate date){
 
-        Mono<List<ConcertDto>> response = webClientBuilder.build()
+        Mono<List<ConcertDto>> response = concertCatalogCache.get("month:" +date, () -> concertClient
                 .get()
                 .uri(CONCERT_BASE_URI +"/month/" +date)
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<ConcertDto>>() {
-                });
+                }));
 
-        List<ConcertDto> concertDtos = response.block();
-        return concertDtos;
+        return withAvailability(response);
     }
 
     // Monolithic Implementation
@@ -266,21 +269,16 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = CONCERT_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<ConcertDto> getConcertByLoggedInOwner(){
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        org.springframework.security.core.userdetails.User principal =
-                (org.springframework.security.core.userdetails.User) authentication.getPrincipal();
-        Optional<User> owner =  userRepository.findByEmail(principal.getUsername());
-
-        Mono<List<ConcertDto>> response = webClientBuilder.build()
+    public Mono<List<ConcertDto>> getConcertByLoggedInOwner(){
+        //The forwarded JWT carries the userId, the downstream service reads it from the verified claims
+        Mono<List<ConcertDto>> response = concertClient
                 .get()
-                .uri(CONCERT_BASE_URI +"/owner/" +owner.get().getUserId())
+                .uri(CONCERT_BASE_URI +"/owner")
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<ConcertDto>>() {
                 });
 
-        List<ConcertDto> concertDtos = response.block();
-        return concertDtos;
+        return response;
     }
 
     // Monolithic Implementation
@@ -310,15 +308,16 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE)
     @CircuitBreaker(name = CONCERT_MICROSERVICE)
-    public ConcertDto updateConcert(ConcertDto concertDto){
-        Mono<ConcertDto> response = webClientBuilder.build()
+    public Mono<ConcertDto> updateConcert(ConcertDto concertDto){
+        Mono<ConcertDto> response = concertClient
                 .put()
                 .uri(CONCERT_BASE_URI +"/update/")
                 .body(Mono.just(concertDto), ConcertDto.class)
                 .retrieve()
                 .bodyToMono(ConcertDto.class);
 
-        return response.block();
+        //Catalog changed, drop the cached concerts
+        return response.doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 
     // Monolithic Implementation
@@ -334,13 +333,14 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE)
     @CircuitBreaker(name = CONCERT_MICROSERVICE)
-    public String deleteConcert(Integer concertId) {
-        Mono<String> response = webClientBuilder.build()
+    public Mono<String> deleteConcert(Integer concertId) {
+        Mono<String> response = concertClient
                 .delete()
                 .uri(CONCERT_BASE_URI +"/delete/" +concertId)
                 .retrieve()
                 .bodyToMono(String.class);
-        return response.block();
+        //Catalog changed, drop the cached concerts
+        return response.doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 
     // Monolithic Implementation - Assignment1
@@ -372,16 +372,17 @@ public class ConcertService {
     @RateLimiter(name = CONCERT_MICROSERVICE)
     @Retry(name = CONCERT_MICROSERVICE)
     @CircuitBreaker(name = CONCERT_MICROSERVICE)
-    public ConcertDto addConcertAndReservation(ConcertDto concertDto){
+    public Mono<ConcertDto> addConcertAndReservation(ConcertDto concertDto){
         //Add Concert
-        Mono<ConcertDto> response = webClientBuilder.build()
+        Mono<ConcertDto> response = concertClient
                 .post()
                 .uri(CONCERT_BASE_URI)
                 .body(Mono.just(concertDto), ConcertDto.class)
                 .retrieve()
                 .bodyToMono(ConcertDto.class);
 
-        return response.block();
+        //Catalog changed, drop the cached concerts
+        return response.doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 
     // Changes notifications happen in Concert Microservice
@@ -409,14 +410,55 @@ public class ConcertService {
 //        }
 //    }
 
+    // Cached concerts carry the ticketNumber of load time, the current one is fetched in one call per AVAILABILITY_BATCH_SIZE concerts
+    // Called on the request thread, the caller's JWT reaches the deferred catalog and availability calls through the context
+    private Mono<List<ConcertDto>> withAvailability(Mono<List<ConcertDto>> concerts){
+        return concerts.flatMap(concertDtos -> {
+            if(concertDtos.isEmpty()) return Mono.just(concertDtos);
+            List<Integer> concertIds = concertDtos.stream()
+                    .map(ConcertDto::getConcertId)
+                    .distinct()
+                    .collect(toList());
+            List<List<Integer>> batches = new ArrayList<>();
+            for(int from = 0; from < concertIds.size(); from += AVAILABILITY_BATCH_SIZE){
+                batches.add(concertIds.subList(from, Math.min(from + AVAILABILITY_BATCH_SIZE, concertIds.size())));
+            }
+            return Flux.fromIterable(batches)
+                    .concatMap(this::fetchAvailability)
+                    .collect(HashMap<Integer, Integer>::new, Map::putAll)
+                    .map(availability -> concertDtos.stream()
+                            .map(concert -> concert.toBuilder()
+                                    .ticketNumber(availability.getOrDefault(concert.getConcertId(), concert.getTicketNumber()))
+                                    .build())
+                            .collect(toList()))
+                    .onErrorResume(e -> {
+                        log.warn("Availability lookup failed, returning cached ticket numbers", e);
+                        return Mono.just(concertDtos);
+                    });
+        }).contextWrite(DownstreamClient.callerAuthorization());
+    }
+
+    private Mono<Map<Integer, Integer>> fetchAvailability(List<Integer> batch){
+        String concertIds = batch.stream()
+                .map(String::valueOf)
+                .collect(joining(","));
+        return singleFlight.execute("availability:" +concertIds, () -> concertClient
+                .get()
+                .uri(RESERVATION_BASE_URI +"/availability?concertIds=" +concertIds)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<Integer, Integer>>() {
+                }));
+    }
+
     // Catch only CallNotPermittedException Exception, unless will log all exceptions
-    public List<ConcertDto> circuitBreakerLog(CallNotPermittedException ex){
+    // Only logs, the error goes on to ApplicationExceptionResponse so the client gets its real status
+    public <T> Mono<T> circuitBreakerLog(CallNotPermittedException ex){
         log.warn("CircuitBreaker Open!!!");
-        return null;
+        return Mono.error(ex);
     }
 
-    public List<ConcertDto> retryLog(Throwable ex){
+    public <T> Mono<T> retryLog(Throwable ex){
         log.warn("Retry Triggered!!!");
-        return null;
+        return Mono.error(ex);
     }
 }
@@ -0,0 +1,107 @@
+package com.unipi.giguniverse.service;
+
+import com.unipi.giguniverse.exceptions.ApplicationException;
+import com.unipi.giguniverse.model.ImageBlob;
+import com.unipi.giguniverse.model.User;
+import com.unipi.giguniverse.repository.ImageBlobRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Base64Utils;
+
+import javax.transaction.Transactional;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+
+/**
+ Content addressed image store, images are kept once per SHA-256 of their bytes and
+ entities only reference the hash. Uploads arrive as Base64, plain or as a data URI.
+ */
+@Service
+@AllArgsConstructor
+@Slf4j
+@Transactional
+public class ImageStoreService {
+
+    private final ImageBlobRepository imageBlobRepository;
+
+    public String store(String encodedImage){
+        String base64 = encodedImage;
+        String contentType = null;
+        //data:image/png;base64,....
+        if(encodedImage.startsWith("data:")){
+            int comma = encodedImage.indexOf(',');
+            if(comma < 0) throw new ApplicationException("Invalid image data");
+            int separator = encodedImage.indexOf(';');
+            if(separator > 5 && separator < comma) contentType = encodedImage.substring(5, separator);
+            base64 = encodedImage.substring(comma + 1);
+        }
+        byte[] data;
+        try {
+            data = Base64Utils.decodeFromString(base64.trim());
+        }
+        catch (IllegalArgumentException e){
+            throw new ApplicationException("Invalid image data", e);
+        }
+        String hash = sha256(data);
+        if(!imageBlobRepository.existsById(hash)){
+            imageBlobRepository.save(ImageBlob.builder()
+                    .hash(hash)
+                    .contentType(contentType != null ? contentType : guessContentType(data))
+                    .data(data)
+                    .created(Instant.now())
+                    .build());
+        }
+        return hash;
+    }
+
+    //Profiles saved before the image store keep the Base64 image inline, it is moved on first read
+    public void moveInlineImage(User user){
+        if(user.getImage() == null) return;
+        try {
+            user.setImageHash(store(user.getImage()));
+            user.setImage(null);
+        }
+        catch (ApplicationException e){
+            log.warn("Inline image of user {} was not moved: {}", user.getUserId(), e.getMessage());
+        }
+    }
+
+    public String imageUrlOf(User user){
+        return user.getImageHash() != null ? "/api/image/" +user.getImageHash() : null;
+    }
+
+    public ImageBlob getImage(String hash){
+        return imageBlobRepository.findById(hash)
+                .orElseThrow(()->new ApplicationException("Image not found"));
+    }
+
+    private String guessContentType(byte[] data){
+        try {
+            String contentType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(data));
+            return contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        catch (IOException e){
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+    }
+
+    private String sha256(byte[] data){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest){
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e){
+            throw new ApplicationException("Exception occurred while hashing image", e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.unipi.giguniverse.service;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+@Slf4j
+public class MailDispatcher {
+
+    private final MailOutboxService mailOutboxService;
+
+    //Each batch commits on its own, a full batch means more mails may be due
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-ms:2000}")
+    public void dispatch(){
+        try {
+            int taken;
+            do {
+                taken = mailOutboxService.dispatchBatch();
+            } while(taken == mailOutboxService.getBatchSize());
+        }
+        catch (RuntimeException e){
+            log.error("Mail outbox dispatch failed", e);
+        }
+    }
+}
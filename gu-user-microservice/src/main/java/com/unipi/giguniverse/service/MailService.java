@@ -1,19 +1,22 @@
 package com.unipi.giguniverse.service;
 
-import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.NotificationEmail;
-import com.unipi.giguniverse.model.Reservation;
+import com.unipi.giguniverse.model.OutboxMail;
 import com.unipi.giguniverse.model.Ticket;
-import com.unipi.giguniverse.repository.TicketRepository;
+import com.unipi.giguniverse.repository.OutboxMailRepository;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.mail.MailException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.mail.javamail.MimeMessagePreparator;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
 @Slf4j
 @Service
 @AllArgsConstructor
@@ -21,84 +24,71 @@ public class MailService {
 
     private final JavaMailSender mailSender;
     private final MailContentBuilder mailContentBuilder;
+    private final OutboxMailRepository outboxMailRepository;
+    private final ExecutorService mailExecutor;
 
-    @Async
     public void sendTicketEMail(Ticket ticket, String qrString){
-        MimeMessagePreparator messagePreparator = mimeMessage -> {
-            MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
-            messageHelper.setFrom("giguniverse@email.com");
-            messageHelper.setTo(ticket.getTicketHolderEmail());
-            messageHelper.setSubject("Αγορά Εισιτηρίου απο GigUniverse");
-            messageHelper.setText(mailContentBuilder.buildTicketMail(ticket, qrString),true);
-        };
-
-        try{
-            mailSender.send(messagePreparator);
-            log.info("Ticket Email sent!");
-        }
-        catch (MailException e){
-            throw new ApplicationException("Exception occurred! Failed to send the" +
-                    " email to recipient: "+ticket.getTicketHolderEmail());
-        }
+        send(ticket.getTicketHolderEmail(), "Αγορά Εισιτηρίου απο GigUniverse",
+                mailContentBuilder.buildTicketMail(ticket, qrString), "Ticket");
     }
 
-    @Async
     public void sendActivationEMail(NotificationEmail notificationEmail){
-        MimeMessagePreparator messagePreparator = mimeMessage -> {
-            MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
-            messageHelper.setFrom("giguniverse@email.com");
-            messageHelper.setTo(notificationEmail.getRecipient());
-            messageHelper.setSubject(notificationEmail.getSubject());
-            messageHelper.setText(mailContentBuilder.buildActivationMail(notificationEmail.getBody()), true);
-        };
-
-        try{
-            mailSender.send(messagePreparator);
-            log.info("Activation Email sent!");
-        }
-        catch (MailException e){
-            throw new ApplicationException("Exception occurred! Failed to send the" +
-                    " email to recipient: "+notificationEmail.getRecipient());
-        }
+        send(notificationEmail.getRecipient(), notificationEmail.getSubject(),
+                mailContentBuilder.buildActivationMail(notificationEmail.getBody()), "Activation");
     }
 
-    @Async
     public void rescheduleConcertNotificationEmail(Ticket ticket, String qrString){
-        MimeMessagePreparator messagePreparator = mimeMessage -> {
-            MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
-            messageHelper.setFrom("giguniverse@email.com");
-            messageHelper.setTo(ticket.getTicketHolderEmail());
-            messageHelper.setSubject("Αλλαγή Προγγραματισμού συναυλίας - GigUniverse");
-            messageHelper.setText(mailContentBuilder.buildRescheduleMail(ticket, qrString),true);
-        };
+        send(ticket.getTicketHolderEmail(), "Αλλαγή Προγγραματισμού συναυλίας - GigUniverse",
+                mailContentBuilder.buildRescheduleMail(ticket, qrString), "Reschedule");
+    }
 
+    public void cancelConcertNotificationEmail(Ticket ticket){
+        send(ticket.getTicketHolderEmail(), "Ακύρωση συναυλίας - GigUniverse",
+                mailContentBuilder.buildCancellationEMail(ticket), "Cancellation");
+    }
+
+    //Rendered on the caller thread so the task holds no entities, delivered on the bounded mail executor
+    private void send(String recipient, String subject, String body, String type){
         try{
-            mailSender.send(messagePreparator);
-            log.info("Reschedule Email sent!");
+            mailExecutor.execute(() -> deliver(recipient, subject, body, type));
         }
-        catch (MailException e){
-            throw new ApplicationException("Exception occurred! Failed to send the" +
-                    " email to recipient: "+ticket.getTicketHolderEmail());
+        catch (RejectedExecutionException e){
+            log.warn("Mail executor saturated, queueing {} Email to {} in the outbox", type, recipient);
+            spill(recipient, subject, body, null);
         }
     }
 
-    @Async
-    public void cancelConcertNotificationEmail(Ticket ticket){
+    private void deliver(String recipient, String subject, String body, String type){
         MimeMessagePreparator messagePreparator = mimeMessage -> {
-            MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
+            MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage, true, StandardCharsets.UTF_8.name());
             messageHelper.setFrom("giguniverse@email.com");
-            messageHelper.setTo(ticket.getTicketHolderEmail());
-            messageHelper.setSubject("Ακύρωση συναυλίας - GigUniverse");
-            messageHelper.setText(mailContentBuilder.buildCancellationEMail(ticket),true);
+            messageHelper.setTo(recipient);
+            messageHelper.setSubject(subject);
+            messageHelper.setText(body, true);
+            mailContentBuilder.addLogo(messageHelper);
         };
+
         try{
             mailSender.send(messagePreparator);
-            log.info("Cancellation Email sent!");
+            log.info("{} Email sent!", type);
         }
         catch (MailException e){
-            throw new ApplicationException("Exception occurred! Failed to send the" +
-                    " email to recipient: "+ticket.getTicketHolderEmail());
+            //Nobody waits on this thread, hand the mail to the outbox dispatcher for retries
+            log.warn("Failed to send {} Email to {}, queueing it in the outbox", type, recipient, e);
+            spill(recipient, subject, body, e.getMessage());
         }
     }
 
+    private void spill(String recipient, String subject, String body, String error){
+        Instant now = Instant.now();
+        outboxMailRepository.save(OutboxMail.builder()
+                .recipient(recipient)
+                .subject(subject)
+                .body(body)
+                .status(OutboxMail.Status.PENDING)
+                .created(now)
+                .nextAttempt(now)
+                .lastError(error == null ? null : error.substring(0, Math.min(error.length(), 1000)))
+                .build());
+    }
 }
@@ -22,8 +22,10 @@ import java.util.Optional;
 public class OwnerService {
     private final UserRepository userRepository;
     private final OwnerRepository ownerRepository;
+    private final ImageStoreService imageStoreService;
 
     private OwnerDto mapOwnerToOwnerDto(Owner owner){
+        imageStoreService.moveInlineImage(owner);
         return OwnerDto.builder()
                 .userId(owner.getUserId())
                 .firstname(owner.getFirstname())
@@ -32,7 +34,7 @@ public class OwnerService {
                 .companyName(owner.getCompanyName())
                 .vat(owner.getVat())
                 .created(owner.getCreated())
-                .image(owner.getImage())
+                .imageUrl(imageStoreService.imageUrlOf(owner))
                 .build();
     }
 
@@ -54,7 +56,8 @@ public class OwnerService {
         existingOwner.get().setLastname(ownerDto.getLastname());
         existingOwner.get().setFirstname(ownerDto.getFirstname());
         existingOwner.get().setVat(ownerDto.getVat());
-        existingOwner.get().setImage(ownerDto.getImage());
+        //Keep the stored image unless a new one is uploaded
+        if(ownerDto.getImage() != null) existingOwner.get().setImageHash(imageStoreService.store(ownerDto.getImage()));
         return mapOwnerToOwnerDto(existingOwner.get());
 
     }
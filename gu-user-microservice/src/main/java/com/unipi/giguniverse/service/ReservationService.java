@@ -1,29 +1,27 @@
 package com.unipi.giguniverse.service;
 
+import com.unipi.giguniverse.client.ConcertCatalogCache;
+import com.unipi.giguniverse.client.ConcertClient;
+import com.unipi.giguniverse.client.DownstreamClient;
+import com.unipi.giguniverse.client.SingleFlight;
 import com.unipi.giguniverse.dto.ReservationDto;
 //import com.unipi.giguniverse.exceptions.ApplicationException;
 //import com.unipi.giguniverse.model.Owner;
 //import com.unipi.giguniverse.model.Reservation;
 //import com.unipi.giguniverse.model.Concert;
-import com.unipi.giguniverse.model.User;
 //import com.unipi.giguniverse.repository.ConcertRepository;
 //import com.unipi.giguniverse.repository.ReservationRepository;
-import com.unipi.giguniverse.repository.UserRepository;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 import javax.transaction.Transactional;
 import java.util.List;
-import java.util.Optional;
 
 import static java.util.stream.Collectors.toList;
 
@@ -33,15 +31,17 @@ import static java.util.stream.Collectors.toList;
 @Transactional
 public class ReservationService {
 
-    private final String RESERVATION_BASE_URI = "lb://localhost:8082/api/reservation";
+//    private final String RESERVATION_BASE_URI = "lb://localhost:8082/api/reservation";
+    private final String RESERVATION_BASE_URI = "lb://gu-concert-microservice/api/reservation";
 
 //    private final ReservationRepository reservationRepository;
 //    private final ConcertRepository concertRepository;
 //    private final ConcertService concertService;
 //    private final AuthService authService;
-    private final UserRepository userRepository;
     // Microservices version addition
-    private WebClient.Builder webClientBuilder;
+    private final ConcertClient concertClient;
+    private final ConcertCatalogCache concertCatalogCache;
+    private final SingleFlight singleFlight;
 
 //    private ReservationDto mapReservationToDto(Reservation reservation){
 //        return ReservationDto.builder()
@@ -74,31 +74,34 @@ public class ReservationService {
     @RateLimiter(name = ConcertService.CONCERT_MICROSERVICE)
     @Retry(name = ConcertService.CONCERT_MICROSERVICE)
     @CircuitBreaker(name = ConcertService.CONCERT_MICROSERVICE)
-    public ReservationDto addReservation(ReservationDto reservationDto){
+    public Mono<ReservationDto> addReservation(ReservationDto reservationDto){
 
-        Mono<ReservationDto> response = webClientBuilder.build()
+        Mono<ReservationDto> response = concertClient
                 .post()
                 .uri(RESERVATION_BASE_URI)
                 .body(Mono.just(reservationDto), ReservationDto.class)
                 .retrieve()
                 .bodyToMono(ReservationDto.class);
 
-        return response.block();
+        //Concerts embed reservation and venue details, drop the cached ones
+        return response.doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 
     // Microservices Implementation
     @RateLimiter(name = ConcertService.CONCERT_MICROSERVICE)
     @Retry(name = ConcertService.CONCERT_MICROSERVICE)
     @CircuitBreaker(name = ConcertService.CONCERT_MICROSERVICE)
-    public ReservationDto getReservationById(Integer id){
+    public Mono<ReservationDto> getReservationById(Integer id){
 
-        Mono<ReservationDto> response = webClientBuilder.build()
+        //Concurrent lookups of the same reservation share one downstream call
+        Mono<ReservationDto> response = singleFlight.execute("reservation:" +id, () -> concertClient
                 .get()
                 .uri(RESERVATION_BASE_URI + "/" +id)
                 .retrieve()
-                .bodyToMono(ReservationDto.class);
+                .bodyToMono(ReservationDto.class));
 
-        return response.block();
+        //The shared flight builds its request on subscription, possibly off the request thread
+        return response.contextWrite(DownstreamClient.callerAuthorization());
     }
 
     // Monolithic Implementation
@@ -118,21 +121,17 @@ public class ReservationService {
     @RateLimiter(name = ConcertService.CONCERT_MICROSERVICE)
     @Retry(name = ConcertService.CONCERT_MICROSERVICE)
     @CircuitBreaker(name = ConcertService.CONCERT_MICROSERVICE)
-    public List<ReservationDto> getReservationsByLoggedInOwner(){
-
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        org.springframework.security.core.userdetails.User principal =
-                (org.springframework.security.core.userdetails.User) authentication.getPrincipal();
-        Optional<User> owner =  userRepository.findByEmail(principal.getUsername());
+    public Mono<List<ReservationDto>> getReservationsByLoggedInOwner(){
 
-        Mono<List<ReservationDto>> response = webClientBuilder.build()
+        //The forwarded JWT carries the userId, the downstream service reads it from the verified claims
+        Mono<List<ReservationDto>> response = concertClient
                 .get()
-                .uri(RESERVATION_BASE_URI +"/owner/" +owner.get().getUserId())
+                .uri(RESERVATION_BASE_URI +"/owner")
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<ReservationDto>>() {
                 });
 
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -148,15 +147,16 @@ public class ReservationService {
     @RateLimiter(name = ConcertService.CONCERT_MICROSERVICE)
     @Retry(name = ConcertService.CONCERT_MICROSERVICE)
     @CircuitBreaker(name = ConcertService.CONCERT_MICROSERVICE)
-    public ReservationDto updateReservation(ReservationDto reservationDto){
-        Mono<ReservationDto> response = webClientBuilder.build()
+    public Mono<ReservationDto> updateReservation(ReservationDto reservationDto){
+        Mono<ReservationDto> response = concertClient
                 .put()
                 .uri(RESERVATION_BASE_URI +"/update")
                 .body(Mono.just(reservationDto), ReservationDto.class)
                 .retrieve()
                 .bodyToMono(ReservationDto.class);
 
-        return response.block();
+        //Concerts embed reservation and venue details, drop the cached ones
+        return response.doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 
     // Monolithic Implementation
@@ -169,12 +169,13 @@ public class ReservationService {
     @RateLimiter(name = ConcertService.CONCERT_MICROSERVICE)
     @Retry(name = ConcertService.CONCERT_MICROSERVICE)
     @CircuitBreaker(name = ConcertService.CONCERT_MICROSERVICE)
-    public String deleteReservation(Integer reservationId){
-        Mono<String> response = webClientBuilder.build()
+    public Mono<String> deleteReservation(Integer reservationId){
+        Mono<String> response = concertClient
                 .delete()
                 .uri(RESERVATION_BASE_URI +"/delete/" +reservationId)
                 .retrieve()
                 .bodyToMono(String.class);
-        return response.block();
+        //Concerts embed reservation and venue details, drop the cached ones
+        return response.doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 }
@@ -1,5 +1,6 @@
 package com.unipi.giguniverse.service;
 
+import com.unipi.giguniverse.client.TicketClient;
 import com.unipi.giguniverse.dto.*;
 //import com.unipi.giguniverse.exceptions.ApplicationException;
 import com.unipi.giguniverse.model.*;
@@ -7,7 +8,6 @@ import com.unipi.giguniverse.model.*;
 //import com.unipi.giguniverse.repository.ReservationRepository;
 //import com.unipi.giguniverse.repository.TicketRepository;
 
-import com.unipi.giguniverse.repository.UserRepository;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
@@ -15,10 +15,12 @@ import io.github.resilience4j.retry.annotation.Retry;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.transaction.Transactional;
@@ -51,13 +53,12 @@ public class TicketService {
 //    private final TicketRepository ticketRepository;
 //    private final ReservationRepository reservationRepository;
 //    private final ConcertRepository concertRepository;
-    private final UserRepository userRepository;
     private final AuthService authService;
 //    private final MailService mailService;
     private final QRGeneratorService qrGeneratorService;
     private final ConcertService concertService;
     // Microservices version addition
-    private WebClient.Builder webClientBuilder;
+    private final TicketClient ticketClient;
 
 //    private TicketDto mapTicketToDto(Ticket ticket){
 //        return TicketDto.builder()
@@ -137,10 +138,10 @@ public class TicketService {
 //    }
 
     // Microservices Implementation
+    // Not retried, a timeout after the ticket service committed would buy the tickets again
     @RateLimiter(name = TICKET_MICROSERVICE)
-    @Retry(name = TICKET_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = TICKET_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<TicketDto> addTickets(List<TicketDto> ticketDtos){
+    public Mono<List<TicketDto>> addTickets(List<TicketDto> ticketDtos){
 
         User user = authService.getCurrentUserDetails();
         AttendantDto attendantDto = AttendantDto.builder()
@@ -161,14 +162,14 @@ public class TicketService {
             }
         };
 
-        Mono<List<TicketDto>> response = webClientBuilder.build()
+        Mono<List<TicketDto>> response = ticketClient
                 .post()
                 .uri(TICKET_BASE_URI)
                 .body(Mono.just(ticketDtos), parameterizedTypeReference)
                 .retrieve()
                 .bodyToMono(parameterizedTypeReference);
 
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -182,13 +183,27 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE)
     @CircuitBreaker(name = TICKET_MICROSERVICE)
-    public TicketDto getTicketById(String id){
-        Mono<TicketDto> response = webClientBuilder.build()
+    public Mono<TicketDto> getTicketById(String id){
+        Mono<TicketDto> response = ticketClient
                 .get()
                 .uri(TICKET_BASE_URI +"/" +id)
                 .retrieve()
                 .bodyToMono(TicketDto.class);
-        return response.block();
+        return response;
+    }
+
+    // Raw PNG from Ticket Microservice, ETag and Cache-Control headers are kept
+    @RateLimiter(name = TICKET_MICROSERVICE)
+    @Retry(name = TICKET_MICROSERVICE)
+    @CircuitBreaker(name = TICKET_MICROSERVICE)
+    public Mono<ResponseEntity<byte[]>> getTicketQRCode(String id){
+        Mono<ResponseEntity<byte[]>> response = ticketClient
+                .get()
+                .uri(TICKET_BASE_URI +"/" +id +"/qr.png")
+                .accept(MediaType.IMAGE_PNG)
+                .retrieve()
+                .toEntity(byte[].class);
+        return response;
     }
 
     // Monolithic Implementation
@@ -212,15 +227,77 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE)
     @CircuitBreaker(name = TICKET_MICROSERVICE)
-    public TicketDto validateTicket(String id){
+    public Mono<TicketDto> validateTicket(String id){
 
-        Mono<TicketDto> response = webClientBuilder.build()
+        Mono<TicketDto> response = ticketClient
                 .get()
                 .uri(TICKET_BASE_URI +"/validate/" +id)
                 .retrieve()
                 .bodyToMono(TicketDto.class);
 
-        return response.block();
+        return response;
+    }
+
+    // Gate scan, a single lightweight call to Ticket Microservice
+    // Not retried, a replayed scan would be reported as already used
+    @RateLimiter(name = TICKET_MICROSERVICE)
+    @CircuitBreaker(name = TICKET_MICROSERVICE)
+    public Mono<TicketScanDto> scanTicket(String id, Integer concertId){
+
+        Mono<TicketScanDto> response = ticketClient
+                .post()
+                .uri(TICKET_BASE_URI +"/scan/" +id +(concertId != null ? "?concertId=" +concertId : ""))
+                .retrieve()
+                .bodyToMono(TicketScanDto.class);
+
+        return response;
+    }
+
+    // Attendee export, buffers are passed on as they arrive instead of collecting the body.
+    // No Retry, a stream that failed halfway cannot be resumed
+    @RateLimiter(name = TICKET_MICROSERVICE)
+    @CircuitBreaker(name = TICKET_MICROSERVICE)
+    public Flux<DataBuffer> exportTicketsByConcertID(Integer concertId){
+
+        Flux<DataBuffer> response = ticketClient
+                .get()
+                .uri(TICKET_BASE_URI +"/concert/" +concertId +"/export")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class);
+
+        return response;
+    }
+
+    // Gate manifest for offline scanners, binary body passed through as is
+    @RateLimiter(name = TICKET_MICROSERVICE)
+    @Retry(name = TICKET_MICROSERVICE)
+    @CircuitBreaker(name = TICKET_MICROSERVICE)
+    public Mono<byte[]> getManifest(Integer concertId, long since){
+
+        Mono<byte[]> response = ticketClient
+                .get()
+                .uri(TICKET_BASE_URI +"/manifest/" +concertId +"?since=" +since)
+                .accept(MediaType.APPLICATION_OCTET_STREAM)
+                .retrieve()
+                .bodyToMono(byte[].class);
+
+        return response;
+    }
+
+    @RateLimiter(name = TICKET_MICROSERVICE)
+    @Retry(name = TICKET_MICROSERVICE)
+    @CircuitBreaker(name = TICKET_MICROSERVICE)
+    public Mono<byte[]> getManifestKey(){
+
+        Mono<byte[]> response = ticketClient
+                .get()
+                .uri(TICKET_BASE_URI +"/manifest/key")
+                .accept(MediaType.APPLICATION_OCTET_STREAM)
+                .retrieve()
+                .bodyToMono(byte[].class);
+
+        return response;
     }
 
     // Monolithic Implementation
@@ -236,14 +313,18 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = TICKET_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<TicketDto> getAllTickets(){
-        Mono<List<TicketDto>> response = webClientBuilder.build()
+    public Mono<List<TicketDto>> getAllTickets(String after, Integer limit){
+        //after/limit select a keyset page, without them the ticket service returns its default page
+        Mono<List<TicketDto>> response = ticketClient
                 .get()
-                .uri(TICKET_BASE_URI)
+                .uri(UriComponentsBuilder.fromUriString(TICKET_BASE_URI)
+                        .queryParamIfPresent("after", Optional.ofNullable(after))
+                        .queryParamIfPresent("limit", Optional.ofNullable(limit))
+                        .toUriString())
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<TicketDto>>() {
                 });
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -259,14 +340,17 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = TICKET_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<TicketDto> getTicketsByConcertID(Integer concertId){
-        Mono<List<TicketDto>> response = webClientBuilder.build()
+    public Mono<List<TicketDto>> getTicketsByConcertID(Integer concertId, String after, Integer limit){
+        Mono<List<TicketDto>> response = ticketClient
                 .get()
-                .uri(TICKET_BASE_URI +"/concert/" +concertId)
+                .uri(UriComponentsBuilder.fromUriString(TICKET_BASE_URI +"/concert/" +concertId)
+                        .queryParamIfPresent("after", Optional.ofNullable(after))
+                        .queryParamIfPresent("limit", Optional.ofNullable(limit))
+                        .toUriString())
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<TicketDto>>() {
                 });
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -282,14 +366,14 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = TICKET_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<TicketDto> getTicketsByTicketHolderEmail(String ticketHolderEmail){
-        Mono<List<TicketDto>> response = webClientBuilder.build()
+    public Mono<List<TicketDto>> getTicketsByTicketHolderEmail(String ticketHolderEmail){
+        Mono<List<TicketDto>> response = ticketClient
                 .get()
                 .uri(TICKET_BASE_URI +"/ticketHolderEmail/" +ticketHolderEmail)
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<TicketDto>>() {
                 });
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -310,19 +394,15 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = TICKET_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<TicketDto> getTicketsByLoggedInUser(){
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        org.springframework.security.core.userdetails.User principal =
-                (org.springframework.security.core.userdetails.User) authentication.getPrincipal();
-        Optional<User> user =  userRepository.findByEmail(principal.getUsername());
-
-        Mono<List<TicketDto>> response = webClientBuilder.build()
+    public Mono<List<TicketDto>> getTicketsByLoggedInUser(){
+        //The forwarded JWT carries the userId, the downstream service reads it from the verified claims
+        Mono<List<TicketDto>> response = ticketClient
                 .get()
-                .uri(TICKET_BASE_URI +"/loggedin/" +user.get().getUserId())
+                .uri(TICKET_BASE_URI +"/loggedin")
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<TicketDto>>() {
                 });
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -340,14 +420,14 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE)
     @CircuitBreaker(name = TICKET_MICROSERVICE)
-    public TicketDto updateTicket(TicketDto ticketDto){
-        Mono<TicketDto> response = webClientBuilder.build()
+    public Mono<TicketDto> updateTicket(TicketDto ticketDto){
+        Mono<TicketDto> response = ticketClient
                 .put()
                 .uri(TICKET_BASE_URI)
                 .body(Mono.just(ticketDto), TicketDto.class)
                 .retrieve()
                 .bodyToMono(TicketDto.class);
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -360,13 +440,13 @@ public class TicketService {
     @RateLimiter(name = TICKET_MICROSERVICE)
     @Retry(name = TICKET_MICROSERVICE)
     @CircuitBreaker(name = TICKET_MICROSERVICE)
-    public String deleteTicket(String ticketId) {
-        Mono<String> response = webClientBuilder.build()
+    public Mono<String> deleteTicket(String ticketId) {
+        Mono<String> response = ticketClient
                 .delete()
                 .uri(TICKET_BASE_URI +"/delete/" +ticketId)
                 .retrieve()
                 .bodyToMono(String.class);
-        return response.block();
+        return response;
     }
 
     // Method Implemented in Tickets Microservice
@@ -395,13 +475,14 @@ public class TicketService {
     }*/
 
     // Catch only CallNotPermittedException Exception, unless will log all exceptions
-    public List<TicketDto> circuitBreakerLog(CallNotPermittedException ex){
+    // Only logs, the error goes on to ApplicationExceptionResponse so the client gets its real status
+    public <T> Mono<T> circuitBreakerLog(CallNotPermittedException ex){
         log.warn("CircuitBreaker Open!!!");
-        return null;
+        return Mono.error(ex);
     }
 
-    public List<TicketDto> retryLog(Throwable ex) {
+    public <T> Mono<T> retryLog(Throwable ex){
         log.warn("Retry Triggered!!!");
-        return null;
+        return Mono.error(ex);
     }
 }
@@ -1,13 +1,13 @@
 package com.unipi.giguniverse.service;
 
 import com.unipi.giguniverse.exceptions.ApplicationException;
-import com.unipi.giguniverse.model.Owner;
 import com.unipi.giguniverse.model.User;
 import com.unipi.giguniverse.repository.UserRepository;
 import com.unipi.giguniverse.security.ApplicationUserRole;
 import lombok.AllArgsConstructor;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,7 +21,7 @@ import static java.util.Collections.singletonList;
 @Service
 @AllArgsConstructor
 @Transactional
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
     private UserRepository userRepository;
 
@@ -30,16 +30,7 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         Optional<User> userOptional = userRepository.findByEmail(email);
         User user = userOptional.orElseThrow(()->new ApplicationException("User not found"));
 
-        //TODO: Testing User roles
-        //String role = ApplicationUserRole.ATTENDANT.name();
-        Set<SimpleGrantedAuthority> authorities = ApplicationUserRole.ATTENDANT.getGrantedAuthorities();
-        if (user instanceof Owner){
-            //String role = ApplicationUserRole.OWNER.name();
-            authorities = ApplicationUserRole.OWNER.getGrantedAuthorities();
-        }
-        //TODO: Remove sout
-        System.out.println(authorities.toString());
-
+        Set<SimpleGrantedAuthority> authorities = ApplicationUserRole.of(user).getGrantedAuthorities();
 
         UserDetails userDetails = org.springframework.security.core.userdetails.User.builder()
                 .username(user.getEmail())
@@ -50,4 +41,16 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 
         return userDetails;
     }
+
+    //Called after a successful login when the stored hash used another BCrypt factor
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword){
+        User user = userRepository.findByEmail(userDetails.getUsername())
+                .orElseThrow(()->new ApplicationException("User not found"));
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        return org.springframework.security.core.userdetails.User.withUserDetails(userDetails)
+                .password(newPassword)
+                .build();
+    }
 }
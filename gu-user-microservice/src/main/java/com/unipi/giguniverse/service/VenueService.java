@@ -1,12 +1,12 @@
 package com.unipi.giguniverse.service;
 
+import com.unipi.giguniverse.client.ConcertCatalogCache;
+import com.unipi.giguniverse.client.VenueClient;
 //import com.unipi.giguniverse.config.Resilience4jConfig;
 import com.unipi.giguniverse.dto.ConcertDto;
 import com.unipi.giguniverse.dto.VenueDto;
 import com.unipi.giguniverse.model.Owner;
-import com.unipi.giguniverse.model.User;
 import com.unipi.giguniverse.model.Venue;
-import com.unipi.giguniverse.repository.UserRepository;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
@@ -17,10 +17,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
 import javax.transaction.Transactional;
@@ -45,10 +44,10 @@ public class VenueService {
     private static final String VENUE_MICROSERVICE = "VenueMicroservice";
 
 //    private final VenueRepository venueRepository;
-    private final UserRepository userRepository;
     private final AuthService authService;
     // Microservices version addition
-    private WebClient.Builder webClientBuilder;
+    private final VenueClient venueClient;
+    private final ConcertCatalogCache concertCatalogCache;
 //    private ReactiveCircuitBreakerFactory rcbFactory;
 
     // Monolithic Implementation
@@ -69,15 +68,15 @@ public class VenueService {
     @RateLimiter(name = VENUE_MICROSERVICE)
     @Retry(name = VENUE_MICROSERVICE)
     @CircuitBreaker(name = VENUE_MICROSERVICE)
-    public VenueDto addVenue(VenueDto venueDto){
-        Mono<VenueDto> response = webClientBuilder.build()
+    public Mono<VenueDto> addVenue(VenueDto venueDto){
+        Mono<VenueDto> response = venueClient
                 .post()
                 .uri (VENUE_BASE_URI)
                 .body(Mono.just(mapVenueDtoToVenue(venueDto)), VenueDto.class)
                 .retrieve()
                 .bodyToMono(VenueDto.class);
 
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -93,17 +92,20 @@ public class VenueService {
     @RateLimiter(name = VENUE_MICROSERVICE)
     @Retry(name = VENUE_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = VENUE_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<VenueDto> getAllVenues(){
+    public Mono<List<VenueDto>> getAllVenues(Integer after, Integer limit){
         // Use ParameterizedTypeReference to receive the List
-        Mono<List<VenueDto>> response = webClientBuilder.build()
+        Mono<List<VenueDto>> response = venueClient
                 .get()
-                .uri(VENUE_BASE_URI +"/all")
+                .uri(UriComponentsBuilder.fromUriString(VENUE_BASE_URI +"/all")
+                        .queryParamIfPresent("after", Optional.ofNullable(after))
+                        .queryParamIfPresent("limit", Optional.ofNullable(limit))
+                        .toUriString())
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<VenueDto>>() {
                 });
         // response to venue
         // convert to venueDto and return
-        return response.block();
+        return response;
     }
 
     VenueDto mapVenueToVenueDto(Venue venue){
@@ -139,14 +141,14 @@ public class VenueService {
     @RateLimiter(name = VENUE_MICROSERVICE)
     @Retry(name = VENUE_MICROSERVICE)
     @CircuitBreaker(name = VENUE_MICROSERVICE)
-    public VenueDto getVenueById(Integer id){
-        Mono<VenueDto> response = webClientBuilder.build()
+    public Mono<VenueDto> getVenueById(Integer id){
+        Mono<VenueDto> response = venueClient
                 .get()
                 .uri(VENUE_BASE_URI +"/" +id)
                 .retrieve()
                 .bodyToMono(VenueDto.class);
 
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -190,20 +192,16 @@ public class VenueService {
     @RateLimiter(name = VENUE_MICROSERVICE)
     @Retry(name = VENUE_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = VENUE_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<VenueDto> getVenuesByLoggedInOwner(){
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        org.springframework.security.core.userdetails.User principal =
-                (org.springframework.security.core.userdetails.User) authentication.getPrincipal();
-        Optional<User> owner =  userRepository.findByEmail(principal.getUsername());
-
+    public Mono<List<VenueDto>> getVenuesByLoggedInOwner(){
+        //The forwarded JWT carries the userId, the downstream service reads it from the verified claims
         // Use ParameterizedTypeReference to receive the List
-        Mono<List<VenueDto>> response = webClientBuilder.build()
+        Mono<List<VenueDto>> response = venueClient
                 .get()
-                .uri(VENUE_BASE_URI +"/user/" +owner.get().getUserId())
+                .uri(VENUE_BASE_URI +"/user")
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<VenueDto>>() {});
         // response to venue
-        return response.block();
+        return response;
     }
 
     // Monolithic Implementation
@@ -219,16 +217,16 @@ public class VenueService {
     @RateLimiter(name = VENUE_MICROSERVICE)
     @Retry(name = VENUE_MICROSERVICE, fallbackMethod = "retryLog")
     @CircuitBreaker(name = VENUE_MICROSERVICE, fallbackMethod = "circuitBreakerLog")
-    public List<VenueDto> getVenueByCity(String city){
+    public Mono<List<VenueDto>> getVenueByCity(String city){
         // Use ParameterizedTypeReference to receive the List
-        Mono<List<VenueDto>> response = webClientBuilder.build()
+        Mono<List<VenueDto>> response = venueClient
                 .get()
                 .uri(VENUE_BASE_URI +"/city/" +city)
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<VenueDto>>() {
                 });
         // response to venue
-        return response.block();
+        return response;
     }
 
     // Monolithic PUT Implementation
@@ -247,16 +245,17 @@ public class VenueService {
     @RateLimiter(name = VENUE_MICROSERVICE)
     @Retry(name = VENUE_MICROSERVICE)
     @CircuitBreaker(name = VENUE_MICROSERVICE)
-    public VenueDto updateVenue(VenueDto venueDto){
+    public Mono<VenueDto> updateVenue(VenueDto venueDto){
 
-        Mono<VenueDto> response = webClientBuilder.build()
+        Mono<VenueDto> response = venueClient
                 .put()
                 .uri(VENUE_BASE_URI +"/update")
                 .body(Mono.just(venueDto), VenueDto.class)
                 .retrieve()
                 .bodyToMono(VenueDto.class);
 
-        return  response.block();
+        //Concerts embed reservation and venue details, drop the cached ones
+        return response.doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 
     // Monolithic DELETE Implementation
@@ -265,30 +264,30 @@ public class VenueService {
 //        return "Venue with id:" + venueId.toString() + " was deleted.";
 //    }
 
-    // Microservices PUT Implementation - Reactive programming
+    // Microservices DELETE Implementation - Reactive programming
     @RateLimiter(name = VENUE_MICROSERVICE)
     @Retry(name = VENUE_MICROSERVICE)
     @CircuitBreaker(name = VENUE_MICROSERVICE)
-    public String deleteVenue(Integer venueId){
-        Mono<Venue> response = webClientBuilder.build()
+    public Mono<String> deleteVenue(Integer venueId){
+        return venueClient
                 .delete()
                 .uri(VENUE_BASE_URI +"/delete/" +venueId)
                 .retrieve()
-                .bodyToMono(Venue.class);
-
-        Boolean isDeleted = response.subscribe().isDisposed();
-        if(isDeleted) return "Venue with id:" + venueId + " was deleted.";
-        else return "Venue not found";
+                .toBodilessEntity()
+                .map(response -> "Venue with id:" + venueId + " was deleted.")
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just("Venue not found"))
+                .doFinally(signal -> concertCatalogCache.invalidateAll());
     }
 
     // Catch only CallNotPermittedException Exception, unless will log all exceptions
-    public List<VenueDto> circuitBreakerLog(CallNotPermittedException ex){
+    // Only logs, the error goes on to ApplicationExceptionResponse so the client gets its real status
+    public <T> Mono<T> circuitBreakerLog(CallNotPermittedException ex){
         log.warn("CircuitBreaker Open!!!");
-        return null;
+        return Mono.error(ex);
     }
 
-    public List<VenueDto> retryLog(Throwable ex) {
+    public <T> Mono<T> retryLog(Throwable ex){
         log.warn("Retry Triggered!!!");
-        return null;
+        return Mono.error(ex);
     }
 }
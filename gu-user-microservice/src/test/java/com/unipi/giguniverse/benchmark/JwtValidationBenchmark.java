@@ -0,0 +1,75 @@
+package com.unipi.giguniverse.benchmark;
+
+import com.unipi.giguniverse.model.Owner;
+import com.unipi.giguniverse.security.JwtProvider;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static io.jsonwebtoken.Jwts.parser;
+
+/**
+ Cost of authenticating one request: the RSA signature check the filter did twice per request before,
+ once, and a repeated token served from JwtProvider's claims cache.
+ Run the main method, the gc profiler reports bytes allocated per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtValidationBenchmark {
+
+    private JwtProvider jwtProvider;
+    private PublicKey publicKey;
+    private String jwt;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        publicKey = keyPair.getPublic();
+
+        jwtProvider = new JwtProvider(new SimpleMeterRegistry(), TimeUnit.HOURS.toMillis(1), "benchmark", 10_000);
+        jwtProvider.useKeys("benchmark", keyPair.getPrivate(), Map.of("benchmark", publicKey));
+        jwt = jwtProvider.generateToken(Owner.builder()
+                .userId(1)
+                .email("owner@giguniverse.com")
+                .build());
+    }
+
+    @Benchmark
+    public Claims parseTwice(){
+        parser().setSigningKey(publicKey).parseClaimsJws(jwt);
+        return parser().setSigningKey(publicKey).parseClaimsJws(jwt).getBody();
+    }
+
+    @Benchmark
+    public Claims parseOnce(){
+        return parser().setSigningKey(publicKey).parseClaimsJws(jwt).getBody();
+    }
+
+    @Benchmark
+    public Claims cachedClaims(){
+        return jwtProvider.parseToken(jwt);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtValidationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,62 @@
+package com.unipi.giguniverse.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DownstreamClientTests {
+
+    private final List<String> sentHeaders = new CopyOnWriteArrayList<>();
+    private final ConcertClient client = new ConcertClient(WebClient.builder()
+            .exchangeFunction(request -> {
+                sentHeaders.add(request.headers().getFirst(HttpHeaders.AUTHORIZATION));
+                return Mono.just(ClientResponse.create(HttpStatus.OK).body("ok").build());
+            }), new ReactorClientHttpConnector());
+
+    @AfterEach
+    void tearDown(){
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void deferredRequestsOffTheRequestThreadKeepTheCallersToken(){
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer token");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        //Built on subscription like SingleFlight and ConcertCatalogCache, subscribed and retried on another thread
+        Mono<String> response = Mono.defer(() -> client.get().uri("/api/concert/owner").retrieve().bodyToMono(String.class))
+                .flatMap(body -> sentHeaders.size() < 2 ? Mono.<String>error(new IllegalStateException()) : Mono.just(body))
+                .retry(1)
+                .contextWrite(DownstreamClient.callerAuthorization());
+        RequestContextHolder.resetRequestAttributes();
+
+        assertEquals("ok", response.subscribeOn(Schedulers.parallel()).block());
+        assertEquals(List.of("Bearer token", "Bearer token"), sentHeaders);
+    }
+
+    @Test
+    void noCallerMeansNoHeader(){
+        client.get().uri("/api/concert").retrieve().bodyToMono(String.class)
+                .contextWrite(DownstreamClient.callerAuthorization())
+                .block();
+
+        assertEquals(1, sentHeaders.size());
+        assertNull(sentHeaders.get(0));
+    }
+}
@@ -0,0 +1,61 @@
+package com.unipi.giguniverse.controller;
+
+import com.unipi.giguniverse.dto.TicketDto;
+import com.unipi.giguniverse.service.TicketService;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TicketControllerLoadTests {
+
+    private static final int REQUESTS = 200;
+    private static final Duration DOWNSTREAM_LATENCY = Duration.ofSeconds(1);
+
+    @Test
+    void requestThreadIsReleasedWhileDownstreamCallsAreInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        TicketService ticketService = mock(TicketService.class);
+        when(ticketService.getTicketById(anyString())).thenAnswer(invocation -> Mono.delay(DOWNSTREAM_LATENCY)
+                .doOnSubscribe(subscription -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                .doFinally(signal -> inFlight.decrementAndGet())
+                .map(tick -> TicketDto.builder().ticketId(invocation.getArgument(0)).build()));
+
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new TicketController(ticketService)).build();
+
+        long start = System.nanoTime();
+        //A single request thread starts every request, a blocking gateway would need one thread per call
+        List<MvcResult> results = new ArrayList<>();
+        for(int i = 0; i < REQUESTS; i++){
+            results.add(mockMvc.perform(get("/api/ticket/" + i))
+                    .andExpect(request().asyncStarted())
+                    .andReturn());
+        }
+        for(MvcResult result : results){
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isOk());
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        //Serially blocking would take REQUESTS x DOWNSTREAM_LATENCY (200s)
+        assertTrue(elapsed.compareTo(DOWNSTREAM_LATENCY.multipliedBy(10)) < 0, "Took " + elapsed);
+        assertTrue(maxInFlight.get() >= REQUESTS / 2, "Max in flight " + maxInFlight.get());
+    }
+}
@@ -0,0 +1,64 @@
+package com.unipi.giguniverse.security;
+
+import com.unipi.giguniverse.exceptions.ThrottledException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTests {
+
+    @Test
+    void encodesAndMatchesOnTheExecutor(){
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(executor, registry, 4, 5000);
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(encoder.matches("secret", hash));
+        assertFalse(encoder.matches("wrong", hash));
+        assertEquals(1, registry.get("password.hash").tag("operation", "encode").timer().count());
+        assertEquals(2, registry.get("password.hash").tag("operation", "matches").timer().count());
+        executor.shutdown();
+    }
+
+    @Test
+    void rehashesWhenTheWorkFactorChanges(){
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(executor, new SimpleMeterRegistry(), 5, 5000);
+
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("secret")));
+        assertFalse(encoder.upgradeEncoding(encoder.encode("secret")));
+        assertFalse(encoder.upgradeEncoding("not-a-bcrypt-hash"));
+        executor.shutdown();
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() throws InterruptedException{
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.AbortPolicy());
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(executor, new SimpleMeterRegistry(), 4, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        //One task running, one queued
+        executor.submit(() -> { release.await(); return null; });
+        executor.submit(() -> null);
+
+        assertThrows(ThrottledException.class, () -> encoder.encode("secret"));
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
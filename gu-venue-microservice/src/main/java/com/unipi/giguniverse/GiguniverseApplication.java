@@ -4,9 +4,12 @@ import com.unipi.giguniverse.config.SwaggerConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.web.reactive.function.client.WebClient;
 
 @SpringBootApplication
 @EnableAsync
@@ -19,4 +22,10 @@ public class GiguniverseApplication {
 		SpringApplication.run(GiguniverseApplication.class, args);
 	}
 
+	@Bean
+	@LoadBalanced //Fetches client names from Discovery Server instead of using ip:port sockets
+	public WebClient.Builder getWebClient(){
+		return WebClient.builder();
+	}
+
 }
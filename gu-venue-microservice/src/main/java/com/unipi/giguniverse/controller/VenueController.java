@@ -1,6 +1,7 @@
 package com.unipi.giguniverse.controller;
 
 import com.unipi.giguniverse.dto.VenueDto;
+import com.unipi.giguniverse.security.JwtVerificationFilter;
 import com.unipi.giguniverse.service.VenueService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,10 +29,12 @@ public class VenueController {
     }
 
     @GetMapping("/all")
-    public ResponseEntity<List<VenueDto>> getAllVenues(){
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(venueService.getAllVenues());
+    public ResponseEntity<List<VenueDto>> getAllVenues(@RequestParam(required = false) Integer after,
+                                                       @RequestParam(required = false) Integer limit){
+        //Always a page, DEFAULT_PAGE_SIZE rows when no limit is given, a full page links to the next one
+        List<VenueDto> venues = venueService.getAllVenues(after, limit);
+        return NextPageLink.page(NextPageLink.currentRequest(), venues, VenueService.pageSize(limit),
+                VenueDto::getVenueId);
     }
 
 //    @GetMapping
@@ -42,8 +45,11 @@ public class VenueController {
 //    }
 
     // Microservices Implementation
-    @GetMapping("/user/{userId}")
-    public ResponseEntity<List<VenueDto>> getVenuesByLoggedInOwner(@PathVariable Integer userId){
+    //Caller from the verified JWT, see JwtVerificationFilter
+    @GetMapping("/user")
+    public ResponseEntity<List<VenueDto>> getVenuesOfCaller(
+            @RequestAttribute(name = JwtVerificationFilter.USER_ID, required = false) Integer userId){
+        if(userId == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         return ResponseEntity
                 .status(HttpStatus.OK)
                 .body(venueService.getVenuesByLoggedInOwner(userId));
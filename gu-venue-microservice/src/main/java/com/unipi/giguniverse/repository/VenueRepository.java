@@ -1,6 +1,7 @@
 package com.unipi.giguniverse.repository;
 
 import com.unipi.giguniverse.model.Venue;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.Collection;
@@ -13,4 +14,6 @@ public interface VenueRepository extends JpaRepository<Venue, Integer> {
     List<Venue> findAllByCity(String city);
 
     List<Venue> findByOwnerUserId(int userId);
+
+    List<Venue> findByVenueIdGreaterThanOrderByVenueIdAsc(int venueId, Pageable pageable);
 }
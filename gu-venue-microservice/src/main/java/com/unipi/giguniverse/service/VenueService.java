@@ -9,6 +9,8 @@ import com.unipi.giguniverse.model.Venue;
 import com.unipi.giguniverse.repository.VenueRepository;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
@@ -23,6 +25,9 @@ import static java.util.stream.Collectors.toList;
 @Transactional
 public class VenueService {
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
     private final VenueRepository venueRepository;
 //    private final UserRepository userRepository;
 //    private final AuthService authService;
@@ -41,14 +46,24 @@ public class VenueService {
         }
     }
 
-    public List<VenueDto> getAllVenues(){
-        List<VenueDto> venues = venueRepository.findAll()
+    public List<VenueDto> getAllVenues(Integer after, Integer limit){
+        List<VenueDto> venues = venueRepository
+                .findByVenueIdGreaterThanOrderByVenueIdAsc(after == null ? 0 : after, pageOf(limit))
                 .stream()
                 .map(this::mapVenueToVenueDto)
                 .collect(toList());
         return venues;
     }
 
+    // Keyset pagination: a page holds at most limit rows ordered by id, the next one starts after the last id returned
+    private Pageable pageOf(Integer limit){
+        return PageRequest.of(0, pageSize(limit));
+    }
+
+    public static int pageSize(Integer limit){
+        return limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
     VenueDto mapVenueToVenueDto(Venue venue){
         return VenueDto.builder()
                 .venueId(venue.getVenueId())